@@ -0,0 +1,56 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chat-like content for the benchmarks: a list of messages of 100 characters each, so the serialization grows linearly
+ * with the amount of messages.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public class BenchmarkContent implements BroadcastContent {
+
+    private final List<String> messages;
+
+    /**
+     * @param messageCount as the amount of messages.
+     * @param revision     as a marker that makes contents of different revisions differ in hash.
+     */
+    public BenchmarkContent(int messageCount, long revision) {
+        List<String> generated = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            StringBuilder message = new StringBuilder(100).append(revision).append('-').append(i).append(':');
+            while (message.length() < 100)
+                message.append('x');
+            generated.add(message.toString());
+        }
+        messages = Collections.unmodifiableList(generated);
+    }
+
+    private BenchmarkContent(List<String> messages) {
+        this.messages = messages;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    /**
+     * @param tag as the tag messages must contain.
+     * @return a copy that only holds the messages containing the tag.
+     */
+    BenchmarkContent filter(String tag) {
+        List<String> filtered = new ArrayList<>();
+        for (String message : messages)
+            if (message.contains(tag))
+                filtered.add(message);
+        return new BenchmarkContent(filtered);
+    }
+}
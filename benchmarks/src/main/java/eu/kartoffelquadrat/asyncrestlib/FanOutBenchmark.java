@@ -0,0 +1,61 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of updateBroadcastContent with registered waiters, including the evaluation of every waiter. Waiters are
+ * persistent subscribers (as used for server-sent events) with a sink that discards events, so they stay registered
+ * across updates. The dispatcher runs on the calling thread, so the measured time covers the whole fan-out.
+ *
+ * @author Maximilian Schiedermeier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FanOutBenchmark {
+
+    @Param({"0", "100", "10000", "100000"})
+    public int waiterCount;
+
+    private BroadcastContentManager<BenchmarkContent> manager;
+    private long revision;
+
+    @Setup
+    public void prepare() {
+        manager = new BroadcastContentManager<>(new BenchmarkContent(10, 0));
+        manager.enableEventDrivenNotification(Runnable::run);
+        for (int i = 0; i < waiterCount; i++)
+            manager.addWaiter(new SseSubscriber<>(manager, "", new IdentityTransformer<>(), null,
+                    DiscardingSink.INSTANCE));
+    }
+
+    @Benchmark
+    public void updateBroadcastContent() {
+        manager.updateBroadcastContent(new BenchmarkContent(10, ++revision));
+    }
+
+    /**
+     * Event sink that discards all events.
+     */
+    static class DiscardingSink implements SseSubscriber.EventSink {
+
+        static final DiscardingSink INSTANCE = new DiscardingSink();
+
+        @Override
+        public void send(long version, String serializedContent) {
+        }
+
+        @Override
+        public void complete() {
+        }
+    }
+}
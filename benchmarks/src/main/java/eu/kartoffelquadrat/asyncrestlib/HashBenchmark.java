@@ -0,0 +1,46 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashing a content (streamed serialization into the hash function), by content size and hash algorithm. A
+ * message is about 100 bytes of JSON.
+ *
+ * @author Maximilian Schiedermeier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int messageCount;
+
+    @Param({"MD5", "MURMUR3_128"})
+    public HashAlgorithm hashAlgorithm;
+
+    private ObjectWriter objectWriter;
+    private BenchmarkContent content;
+
+    @Setup
+    public void prepare() {
+        objectWriter = new ObjectMapper().writer();
+        content = new BenchmarkContent(messageCount, 0);
+    }
+
+    @Benchmark
+    public String hash() {
+        return BroadcastContentHasher.hash(objectWriter, content, hashAlgorithm);
+    }
+}
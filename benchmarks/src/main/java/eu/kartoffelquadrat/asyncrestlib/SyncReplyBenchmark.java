@@ -0,0 +1,46 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a request whose hash does not match the current content, so it is answered synchronously. Serialization and
+ * hash of the current content are shared, so this measures the per-request overhead.
+ *
+ * @author Maximilian Schiedermeier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SyncReplyBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int messageCount;
+
+    private BroadcastContentManager<BenchmarkContent> manager;
+
+    @Setup
+    public void prepare() {
+        manager = new BroadcastContentManager<>(new BenchmarkContent(messageCount, 0));
+    }
+
+    @Benchmark
+    public DeferredResult<ResponseEntity<String>> hashMismatchReply() {
+        return ResponseGenerator.getHashBasedUpdate(30000, manager, "outdated");
+    }
+
+    @Benchmark
+    public DeferredResult<ResponseEntity<byte[]>> hashMismatchByteReply() {
+        return ByteResponseGenerator.getHashBasedUpdate(30000, manager, "outdated");
+    }
+}
@@ -0,0 +1,48 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of updateBroadcastContent with 10000 registered waiters that observe transformed views, by the amount of
+ * distinct transformer tags. Transformed views are computed once per tag, so the cost is expected to grow with the
+ * tag cardinality rather than with the amount of waiters.
+ *
+ * @author Maximilian Schiedermeier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransformFanOutBenchmark {
+
+    private static final int WAITER_COUNT = 10000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int tagCardinality;
+
+    private BroadcastContentManager<BenchmarkContent> manager;
+    private long revision;
+
+    @Setup
+    public void prepare() {
+        manager = new BroadcastContentManager<>(new BenchmarkContent(100, 0));
+        manager.enableEventDrivenNotification(Runnable::run);
+        Transformer<BenchmarkContent> transformer = (content, tag) -> content.filter(tag);
+        for (int i = 0; i < WAITER_COUNT; i++)
+            manager.addWaiter(new SseSubscriber<>(manager, "", transformer, "-" + (i % tagCardinality) + ":",
+                    FanOutBenchmark.DiscardingSink.INSTANCE));
+    }
+
+    @Benchmark
+    public void updateBroadcastContent() {
+        manager.updateBroadcastContent(new BenchmarkContent(100, ++revision));
+    }
+}
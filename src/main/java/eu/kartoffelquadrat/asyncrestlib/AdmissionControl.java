@@ -0,0 +1,141 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the amount of pending requests, so a reconnect storm can not exhaust the threads or memory of a node. Limits
+ * apply per BroadcastContentManager (see setMaxPendingWaiters) and to all managers together (the global limit set
+ * here). Only requests that would have to wait for an update are subject to admission, requests that can be answered
+ * right away are always served. Rejected requests are answered with 503 (Service Unavailable) and a Retry-After
+ * header. Streams (server-sent events) are counted as pending, but never rejected.
+ * <p>
+ * Limits are checked on arrival of a request, so concurrently arriving requests can exceed a limit by at most the
+ * amount of request threads.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public final class AdmissionControl {
+
+    /**
+     * Limit value that disables admission control. Default of the global limit and of every manager.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    // pending requests and streams of all managers, that is requests registered at a manager or served by a thread.
+    private static final LongAdder PENDING_WAITERS = new LongAdder();
+    private static volatile int globalLimit = UNLIMITED;
+
+    private AdmissionControl() {
+    }
+
+    /**
+     * Sets the maximum amount of pending requests of all BroadcastContentManagers together.
+     *
+     * @param maxPendingWaiters as the limit, must be positive. UNLIMITED disables the global limit (default).
+     */
+    public static void setGlobalLimit(int maxPendingWaiters) {
+        if (maxPendingWaiters < 1)
+            throw new IllegalArgumentException("Limit of pending requests must be positive.");
+        globalLimit = maxPendingWaiters;
+    }
+
+    /**
+     * Getter for the maximum amount of pending requests of all BroadcastContentManagers together.
+     *
+     * @return the global limit, or UNLIMITED.
+     */
+    public static int getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * Returns the amount of pending requests (and streams) of all BroadcastContentManagers.
+     *
+     * @return the amount of requests currently waiting for an update.
+     */
+    public static long getPendingWaiterCount() {
+        return PENDING_WAITERS.sum();
+    }
+
+    /**
+     * Tells whether new requests that would have to wait are rejected, because the global limit is reached.
+     *
+     * @return a flag whether this node is saturated.
+     */
+    public static boolean isSaturated() {
+        return PENDING_WAITERS.sum() >= globalLimit;
+    }
+
+    /**
+     * Creates a reply on the admission state of this node, to be returned by a readiness or health endpoint that load
+     * balancers consult. The body is a json object with the current amount of pending requests and the global limit
+     * (-1 if unlimited).
+     *
+     * @return 200 if the node admits further pending requests, 503 if it is saturated.
+     */
+    public static ResponseEntity<String> getAdmissionStatus() {
+        long pendingWaiters = PENDING_WAITERS.sum();
+        int limit = globalLimit;
+        return ResponseEntity.status(pendingWaiters >= limit ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body("{\"pending\":" + pendingWaiters + ",\"limit\":" + (limit == UNLIMITED ? -1 : limit) + "}");
+    }
+
+    /**
+     * Tells whether a request that has to wait for an update of the provided manager may be parked.
+     *
+     * @param broadcastContentManager as the manager the request waits for.
+     * @return true if neither the manager nor the node are saturated.
+     */
+    static boolean admits(BroadcastContentManager<?> broadcastContentManager) {
+        return !broadcastContentManager.isSaturated() && !isSaturated();
+    }
+
+    /**
+     * Tells how close the provided manager or the node are to saturation.
+     *
+     * @param broadcastContentManager as the manager a request waited for.
+     * @return the larger of the manager and the node utilization, between 0 (idle or unlimited) and 1 (saturated).
+     */
+    static double utilization(BroadcastContentManager<?> broadcastContentManager) {
+        double managerUtilization = ratio(broadcastContentManager.getPendingWaiterCount(),
+                broadcastContentManager.getMaxPendingWaiters());
+        return Math.max(managerUtilization, ratio(PENDING_WAITERS.sum(), globalLimit));
+    }
+
+    private static double ratio(long pendingWaiters, int limit) {
+        if (limit == UNLIMITED)
+            return 0;
+        return Math.min(1, (double) pendingWaiters / limit);
+    }
+
+    /**
+     * Creates the reply to a rejected request. Pending requests are released by the next update, or by their timeout
+     * at the latest. Retries are therefore spread across one long-poll timeout, so rejected clients do not return all
+     * at once.
+     *
+     * @param longPollTimeout as the timeout of the rejected request, in milliseconds.
+     * @param <B>             as the body type of the reply.
+     * @return a 503 reply with Retry-After header, in seconds.
+     */
+    static <B> ResponseEntity<B> rejection(long longPollTimeout) {
+        long window = Math.max(1, (longPollTimeout + 999) / 1000);
+        long retryAfter = 1 + ThreadLocalRandom.current().nextLong(window);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter)).build();
+    }
+
+    static void waiterAdded() {
+        PENDING_WAITERS.increment();
+    }
+
+    static void waiterRemoved() {
+        PENDING_WAITERS.decrement();
+    }
+}
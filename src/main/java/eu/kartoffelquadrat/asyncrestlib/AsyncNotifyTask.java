@@ -0,0 +1,65 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * This runnable blocks and awaits internal state changes (of the broadcastmanager). Every state change is handed to the
+ * listener, which sets the result for the deferred http reply (or pushes an event) if the change is relevant to the
+ * subscribing client. The thread running it is created by the ResponseGenerator's notify thread factory. On Java 21+
+ * that is a virtual thread by default, on older runtimes a platform thread.
+ *
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @author Maximilian Schiedermeier
+ */
+class AsyncNotifyTask<C extends BroadcastContent> implements Runnable {
+
+
+    private BroadcastContentManager<C> broadcastContentManager;
+    private UpdateListener waiter;
+
+
+    /**
+     * Constructor to set the parameters required infere whether an internal state change is relevant and to update the
+     * deferred result object.
+     *
+     * @param broadcastContentManager as the entity holding the observed state
+     * @param waiter                  as the pending request or stream that is evaluated upon every state change.
+     */
+    public AsyncNotifyTask(BroadcastContentManager<C> broadcastContentManager, UpdateListener waiter) {
+        this.broadcastContentManager = broadcastContentManager;
+        this.waiter = waiter;
+    }
+
+    /**
+     * Concurrent functionality that blocks, waiting for status changes. Client response objects are not completed
+     * until either of: server was instructed to shutdown (send 204, to tell client no more updates will come) a timeout
+     * already occurred (408) - the deferred result's timeout handler interrupts this thread, so it ends right away. an
+     * actual update is ready for the client (200). That means either of: no hash was provided and the server state
+     * just changed a hash was provided and it differs from the connection specific transformation of the most recent
+     * state change.
+     */
+    @Override
+    public void run() {
+        boolean stopWaiting = false;
+
+        // The wait was already counted by the ResponseGenerator, before the thread was started.
+        try {
+            while (!stopWaiting) {
+
+                // Grab the latch before evaluating the current state. An update that arrives during evaluation
+                // releases exactly this latch, so it can not be missed.
+                CountDownLatch stateUpdateLatch = broadcastContentManager.getStateUpdateLatch();
+
+                // Stay in update loop until content new to current client content (hash difference / newer version),
+                // or the broadcast manager terminated. Otherwise block until managed broadcast content changes.
+                stopWaiting = waiter.notifyUpdate();
+                if (!stopWaiting)
+                    broadcastContentManager.awaitUpdate(stateUpdateLatch);
+            }
+        } catch (InterruptedException ie) {
+            // The request was cancelled (timeout, error or client disconnect). Nobody waits for a result any more.
+        } finally {
+            broadcastContentManager.blockingWaitFinished();
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package eu.kartoffelquadrat.asyncrestlib;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
 
 /**
- * Helper class to generate the MD5 hash of a string-serialized version of broadcast-content. This can be used on client
- * and server-side.
+ * Helper class to generate the hash of a string-serialized version of broadcast-content. This can be used on client
+ * and server-side. The JSON output of the serializer is streamed directly into the hash function, through a reusable
+ * per-thread stream, so no intermediate JSON String or byte array is created.
  *
  * @author Maximilian Schiedermeier
  */
@@ -17,14 +18,46 @@ class BroadcastContentHasher {
      *
      * @param objectWriter as the serializer to be used to convert the content into a JSON string.
      * @param content as the object to be serialized and hashed.
-     * @return
+     * @return the MD5 hex string of the content's serialization.
      */
     protected static String hash(ObjectWriter objectWriter, BroadcastContent content) {
+        return hash(objectWriter, content, HashAlgorithm.MD5);
+    }
+
+    /**
+     * Computes the hash of the JSON serialization for a provided BroadcastContent object, using the provided
+     * algorithm.
+     *
+     * @param objectWriter  as the serializer to be used to convert the content into JSON.
+     * @param content       as the object to be serialized and hashed.
+     * @param hashAlgorithm as the hash function to apply on the UTF-8 encoded serialization.
+     * @return the hex string of the content's hash.
+     */
+    protected static String hash(ObjectWriter objectWriter, BroadcastContent content, HashAlgorithm hashAlgorithm) {
+        HashingOutputStream hashingStream = hashAlgorithm.threadLocalStream();
         try {
-            String jsonString = objectWriter.writeValueAsString(content);
-            return DigestUtils.md5Hex(jsonString);
-        } catch (JsonProcessingException jex) {
+            objectWriter.writeValue(hashingStream, content);
+            return hashingStream.hexDigest();
+        } catch (IOException jex) {
             throw new RuntimeException("Unable to serialize provided BroadcastContent: " + content);
+        } finally {
+            // Partial output of a failed serialization must not leak into the next hash of this thread. A no-op after
+            // a successful digest.
+            hashingStream.reset();
         }
     }
+
+    /**
+     * Computes the hash of an already serialized BroadcastContent. Produces the same result as hash(...) on the
+     * original content, without serializing a second time.
+     *
+     * @param serializedContent as the UTF-8 encoded JSON serialization of a BroadcastContent.
+     * @param hashAlgorithm     as the hash function to apply.
+     * @return the hex string of the provided serialization's hash.
+     */
+    protected static String hashSerialized(byte[] serializedContent, HashAlgorithm hashAlgorithm) {
+        HashingOutputStream hashingStream = hashAlgorithm.threadLocalStream();
+        hashingStream.write(serializedContent, 0, serializedContent.length);
+        return hashingStream.hexDigest();
+    }
 }
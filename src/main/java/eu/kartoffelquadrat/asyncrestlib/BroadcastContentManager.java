@@ -3,8 +3,23 @@ package eu.kartoffelquadrat.asyncrestlib;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The Broadcast Content Manager (BCM) maintains a reference to the current content state (Broadcast Content). The
@@ -18,13 +33,45 @@ public class BroadcastContentManager<C extends BroadcastContent> {
     // the modelMapper used for serialization (is the default jackson object mapper if no custom mapper was provider by
     // constructor)
     private final ObjectMapper objectMapper;
-    // stores a universal latch that is unblocked and replaced every time the server status changes.
-    CountDownLatch stateUpdateLatch = new CountDownLatch(1);
-    // the current content. Can be updated.
-    private C currentBroadcastContent;
-    // a broadcast manager can be actively terminated. If this happens, all the latch is unblocked and a terminated flag
-    // is set. This way open connections can be gracefully closed.
-    private boolean terminated = false;
+    // the immutable writer derived from the above mapper and the hash algorithm, shared by all snapshots.
+    private volatile ContentSerializer serializer;
+    // the current snapshot (content, version, serialization and hash), together with the latch that is unblocked on
+    // the next change and the terminated flag. The whole state is replaced by compare-and-set on every change, so
+    // concurrent updates never get lost and readers never block. A broadcast manager can be actively terminated. If
+    // this happens, the latch is unblocked and a terminated flag is set. This way open connections can be gracefully
+    // closed.
+    private final AtomicReference<BroadcastState<C>> state = new AtomicReference<>();
+    // registry of pending requests, used if event-driven notification is enabled. Waiters do not own a thread, they are
+    // evaluated by the dispatcher whenever the content changes.
+    private final Set<UpdateListener> waiters = ConcurrentHashMap.newKeySet();
+    // amount of pending requests served by a dedicated thread (if event-driven notification is disabled).
+    private final AtomicInteger blockingWaiterCount = new AtomicInteger();
+    // maximum amount of pending requests, see AdmissionControl.
+    private volatile int maxPendingWaiters = AdmissionControl.UNLIMITED;
+    // the executor that evaluates registered waiters on state changes. Null, unless event-driven notification is
+    // enabled.
+    private volatile Executor dispatcher;
+    // splits the evaluation of registered waiters into parallel chunks. Null if all waiters are evaluated by one task.
+    private volatile FanOutPolicy fanOutPolicy;
+    // releases registered waiters in waves at a limited rate. Null if all waiters are released right away.
+    private volatile DeliveryPacer deliveryPacer;
+    // counts paced fan-outs. Pending waves of a fan-out are dropped as soon as a later fan-out started.
+    private final AtomicLong pacedFanOuts = new AtomicLong();
+    // the latest paced fan-out with waves left. Its unreleased waiters are first in line for the next fan-out.
+    private final AtomicReference<PacedFanOut> latestPacedFanOut = new AtomicReference<>();
+    // tells whether updates are compared by hash before being accepted.
+    private volatile SyncMode syncMode = SyncMode.HASH;
+    // the most recent snapshots, oldest first, including the current one. Empty unless a history capacity is set.
+    // Guarded by itself.
+    private final Deque<ContentSnapshot<C>> history = new ArrayDeque<>();
+    // maximum amount of snapshots retained in the above history. 0 disables the history.
+    private int historyCapacity = 0;
+    // withholds rapid updates according to the coalescing policy. Null if updates are published right away.
+    private volatile UpdateCoalescer<C> coalescer;
+    // amount of updates that were replaced by a later update before being published.
+    private final AtomicLong coalescedUpdateCount = new AtomicLong();
+    // additional serialization formats besides JSON, e.g. CBOR. Replaced as a whole on registration.
+    private volatile List<ContentFormat> formats = Collections.emptyList();
 
     /**
      * Standard constructor for a BroadcastContentManager. To be used if no custom serialization rules are required for
@@ -33,8 +80,7 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      * @param content as the resource content observed by subscribers.
      */
     public BroadcastContentManager(C content) {
-        this.currentBroadcastContent = content;
-        objectMapper = new ObjectMapper();
+        this(new ObjectMapper(), content);
     }
 
     /**
@@ -46,8 +92,37 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      * @param content      as the resource content observed by subscribers.
      */
     public BroadcastContentManager(ObjectMapper objectMapper, C content) {
+        this(objectMapper, new ContentSerializer(objectMapper.writer(), HashAlgorithm.MD5), content);
+    }
+
+    /**
+     * Constructor for managers that share their serialization rules with other managers, e.g. all managers of a
+     * BroadcastContentManagerRegistry.
+     *
+     * @param objectMapper as the mapper the serializer was derived from.
+     * @param serializer   as the shared, immutable serializer.
+     * @param content      as the resource content observed by subscribers.
+     */
+    BroadcastContentManager(ObjectMapper objectMapper, ContentSerializer serializer, C content) {
+        this(objectMapper, serializer, content, 1);
+    }
+
+    /**
+     * Constructor for managers that replace an earlier manager of the same resource, e.g. after eviction from a
+     * BroadcastContentManagerRegistry. Versions continue above those of the replaced manager, so clients that still
+     * hold one of them receive the content of the new manager.
+     *
+     * @param objectMapper   as the mapper the serializer was derived from.
+     * @param serializer     as the shared, immutable serializer.
+     * @param content        as the resource content observed by subscribers.
+     * @param initialVersion as the version of the initial content, must be positive.
+     */
+    BroadcastContentManager(ObjectMapper objectMapper, ContentSerializer serializer, C content, long initialVersion) {
+        if (initialVersion < 1)
+            throw new IllegalArgumentException("Initial version must be positive.");
         this.objectMapper = objectMapper;
-        this.currentBroadcastContent = content;
+        this.serializer = serializer;
+        this.state.set(BroadcastState.active(new ContentSnapshot<>(initialVersion, serializer, content)));
     }
 
     /**
@@ -58,15 +133,38 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      */
     protected boolean awaitUpdate() {
         try {
-            stateUpdateLatch.await();
-            return isTerminated();
+            return awaitUpdate(getStateUpdateLatch());
         } catch (InterruptedException ie) {
             throw new RuntimeException("Unable to await broadcast update.");
         }
     }
 
     /**
-     * Updates the maintained content and unblocks the latch. Empty content or content identical by hash is rejected.
+     * Blocks the calling thread until the provided latch, previously obtained via getStateUpdateLatch(), is released.
+     * Unlike awaitUpdate(), this does not miss updates that occurred after the latch was obtained.
+     *
+     * @param observedLatch as the latch that was current when the caller last inspected the content.
+     * @return a flag that indicates whether there are further updates to expect after this one.
+     * @throws InterruptedException if the waiting thread was interrupted, e.g. because the request was cancelled.
+     */
+    boolean awaitUpdate(CountDownLatch observedLatch) throws InterruptedException {
+        observedLatch.await();
+        return isTerminated();
+    }
+
+    /**
+     * Getter for the latch that is released on the next content change or termination.
+     *
+     * @return the current state update latch.
+     */
+    CountDownLatch getStateUpdateLatch() {
+        return state.get().getStateUpdateLatch();
+    }
+
+    /**
+     * Updates the maintained content and unblocks the latch. Empty content is rejected. In HASH sync mode (default),
+     * content identical by hash is rejected as well. If a coalescing policy is set, the update is withheld until the
+     * coalescing window closes and is dropped if replaced by a later update in the meantime.
      *
      * @param contentUpdate the BroadcastContent update.
      */
@@ -76,13 +174,39 @@ public class BroadcastContentManager<C extends BroadcastContent> {
                     "terminated.");
         }
 
-        boolean cisEmpty = contentUpdate.isEmpty();
-        String originalHash = getContentHash();
-        String updateHash = getHashOfCustomContentUsingAssociatedSerializer(contentUpdate);
-        if (!cisEmpty && !originalHash.equals(updateHash)) {
-            this.currentBroadcastContent = contentUpdate;
+        // The update is serialized and hashed once. If accepted, the result is kept in the new snapshot and reused by
+        // all subscribers.
+        SerializedContent<C> serializedUpdate = new SerializedContent<>(serializer, contentUpdate);
+        if (contentUpdate.isEmpty())
+            return;
+
+        UpdateCoalescer<C> activeCoalescer = coalescer;
+        if (activeCoalescer != null) {
+            activeCoalescer.offerUpdate(serializedUpdate);
+            return;
+        }
+        publishUpdate(serializedUpdate);
+    }
 
-            touch();
+    /**
+     * Publishes a content update right away, unless it is rejected by the sync mode.
+     *
+     * @param serializedUpdate as the non-empty content update.
+     */
+    void publishUpdate(SerializedContent<C> serializedUpdate) {
+        // In version sync mode, every update counts as change. No serialization needed. Otherwise the update is
+        // compared to the state it replaces, which is re-evaluated if a concurrent update got in first.
+        while (true) {
+            BroadcastState<C> current = state.get();
+            if (current.isTerminated())
+                throw new RuntimeException("Content can not be updated any more. The broadcast manager is already " +
+                        "terminated.");
+            if (syncMode == SyncMode.HASH && current.getSnapshot().getSerializedContent().getHash()
+                    .equals(serializedUpdate.getHash()))
+                return;
+            if (publish(current, new ContentSnapshot<>(current.getSnapshot().getVersion() + 1, serializer,
+                    serializedUpdate)))
+                return;
         }
     }
 
@@ -92,7 +216,7 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      * BroadcastContents are supposed to be implemented as immutables. The default way to notify the
      * BroadcastContentManager about an update is therefore the "updateBroadcastContent" method. Use this one only if
      * your BroadcastContent is not immutable and you modified the internals of the instance maintained by the
-     * BroadcastContentManager.
+     * BroadcastContentManager. If a coalescing policy is set, the touch is withheld until the coalescing window closes.
      */
     public void touch() {
         if (isTerminated()) {
@@ -100,11 +224,150 @@ public class BroadcastContentManager<C extends BroadcastContent> {
                     "terminated.");
         }
 
-        // unblock all threads blocked by current latch
-        stateUpdateLatch.countDown();
+        UpdateCoalescer<C> activeCoalescer = coalescer;
+        if (activeCoalescer != null) {
+            activeCoalescer.offerTouch();
+            return;
+        }
+        publishTouch();
+    }
+
+    /**
+     * Publishes a new snapshot of the current content instance right away.
+     */
+    void publishTouch() {
+        // The content instance was modified internally and may be modified again right after. Serialize and hash it
+        // now, so the new snapshot (and the history) keeps the state at touch time rather than at its first read.
+        SerializedContent<C> touchedContent = null;
+        while (true) {
+            BroadcastState<C> current = state.get();
+            if (current.isTerminated())
+                throw new RuntimeException("Content can not be updated any more. The broadcast manager is already " +
+                        "terminated.");
+            C content = current.getSnapshot().getContent();
+            if (touchedContent == null || touchedContent.getContent() != content) {
+                touchedContent = new SerializedContent<>(serializer, content);
+                touchedContent.getHash();
+            }
+            if (publish(current, new ContentSnapshot<>(current.getSnapshot().getVersion() + 1, serializer,
+                    touchedContent)))
+                return;
+        }
+    }
+
+    /**
+     * Replaces the current state by a state with the provided snapshot and a fresh latch, unless the current state is
+     * no longer the expected one. On success, all subscribers are unblocked.
+     *
+     * @param expected as the state the snapshot is based on.
+     * @param snapshot as the new snapshot. Its version must be the successor of the expected snapshot version.
+     * @return true if the snapshot was published, false if a concurrent change got in first.
+     */
+    private boolean publish(BroadcastState<C> expected, ContentSnapshot<C> snapshot) {
+        if (!state.compareAndSet(expected, BroadcastState.active(snapshot)))
+            return false;
+        retain(snapshot);
+
+        // unblock all threads blocked by the latch of the replaced state. Future threads already see the new latch.
+        expected.getStateUpdateLatch().countDown();
+
+        // evaluate all registered waiters
+        dispatchToWaiters();
+        return true;
+    }
+
+    /**
+     * Sets the amount of recent content versions retained by this manager. Retained versions allow clients that missed
+     * intermediate updates to catch up on every version since the one they hold, see ResponseGenerator.getUpdatesSince.
+     * The history starts with the current content and keeps at most the given amount of versions, oldest versions are
+     * evicted first. Note that retained versions are not garbage collected until evicted.
+     *
+     * @param historyCapacity as the maximum amount of retained versions. 0 (default) disables the history.
+     */
+    public void setHistoryCapacity(int historyCapacity) {
+        if (historyCapacity < 0)
+            throw new IllegalArgumentException("History capacity must not be negative.");
+        synchronized (history) {
+            this.historyCapacity = historyCapacity;
+            if (history.isEmpty() && historyCapacity > 0)
+                history.addLast(getCurrentSnapshot());
+            trimHistory();
+        }
+    }
+
+    /**
+     * Getter to look up the maximum amount of retained content versions.
+     *
+     * @return the history capacity of this manager, 0 if no history is kept.
+     */
+    public int getHistoryCapacity() {
+        synchronized (history) {
+            return historyCapacity;
+        }
+    }
+
+    /**
+     * Adds a published snapshot to the history, if enabled. Concurrent publishers may arrive out of order, so the
+     * snapshot is inserted by version. If the history is full, the oldest snapshot is evicted, which might be the
+     * provided one.
+     *
+     * @param snapshot as the published snapshot.
+     */
+    private void retain(ContentSnapshot<C> snapshot) {
+        synchronized (history) {
+            if (historyCapacity == 0)
+                return;
+            Deque<ContentSnapshot<C>> newer = new ArrayDeque<>();
+            while (!history.isEmpty() && history.peekLast().getVersion() > snapshot.getVersion())
+                newer.addFirst(history.removeLast());
+            history.addLast(snapshot);
+            history.addAll(newer);
+            trimHistory();
+        }
+    }
+
+    /**
+     * Evicts the oldest snapshots until the history does not exceed its capacity. Caller must hold the history lock.
+     */
+    private void trimHistory() {
+        while (history.size() > historyCapacity)
+            history.removeFirst();
+    }
 
-        // create a new latch for future threads
-        stateUpdateLatch = new CountDownLatch(1);
+    /**
+     * Looks up all retained snapshots with a version newer than the provided version, oldest first.
+     *
+     * @param version as the version held by the client.
+     * @return the snapshots since the provided version, or null if at least one of them was already evicted (or never
+     * retained), in which case the client has to resync.
+     */
+    List<ContentSnapshot<C>> getSnapshotsSince(long version) {
+        synchronized (history) {
+            if (history.isEmpty() || history.peekFirst().getVersion() > version + 1)
+                return null;
+            List<ContentSnapshot<C>> snapshots = new ArrayList<>();
+            for (ContentSnapshot<C> snapshot : history) {
+                if (snapshot.getVersion() > version)
+                    snapshots.add(snapshot);
+            }
+            return snapshots;
+        }
+    }
+
+    /**
+     * Looks up a retained snapshot by version.
+     *
+     * @param version as the version of the requested snapshot.
+     * @return the snapshot, or null if the version is not (or no longer) retained.
+     */
+    ContentSnapshot<C> getRetainedSnapshot(long version) {
+        synchronized (history) {
+            for (ContentSnapshot<C> snapshot : history) {
+                if (snapshot.getVersion() == version)
+                    return snapshot;
+            }
+            return null;
+        }
     }
 
     /**
@@ -113,12 +376,500 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      * resource.
      */
     public void terminate() {
-        this.terminated = true;
+        // Withheld updates are published first, so subscribers receive the final state. Later updates are rejected.
+        UpdateCoalescer<C> activeCoalescer = coalescer;
+        if (activeCoalescer != null)
+            activeCoalescer.terminate();
+
+        BroadcastState<C> current = state.get();
+        while (!current.isTerminated() && !state.compareAndSet(current, current.terminate()))
+            current = state.get();
 
         // unblock all threads blocked by current latch
-        stateUpdateLatch.countDown();
+        current.getStateUpdateLatch().countDown();
+
+        // release all registered waiters
+        dispatchToWaiters();
     }
 
+    /**
+     * Enables event-driven notification, using a small bounded thread pool that is shared by all
+     * BroadcastContentManagers. Once enabled, the ResponseGenerator no longer starts a thread per pending request, but
+     * registers the request at this manager. Registered requests are evaluated and completed by the dispatcher whenever
+     * the content changes, so an idle subscriber does not occupy any thread.
+     */
+    public void enableEventDrivenNotification() {
+        enableEventDrivenNotification(DefaultDispatcher.POOL);
+    }
+
+    /**
+     * Enables event-driven notification, using a custom dispatcher. See enableEventDrivenNotification() for details.
+     *
+     * @param dispatcher as the executor that evaluates and completes pending requests on content changes. Should be
+     *                   bounded, e.g. a fixed thread pool.
+     */
+    public void enableEventDrivenNotification(Executor dispatcher) {
+        if (dispatcher == null)
+            throw new NullPointerException("Dispatcher must not be null.");
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Getter to tell whether pending requests are registered at this manager, rather than each being served by a
+     * dedicated thread.
+     *
+     * @return a flag to indicate if event-driven notification is enabled.
+     */
+    public boolean isEventDriven() {
+        return dispatcher != null;
+    }
+
+    /**
+     * Registers a pending request or stream. Waiters are evaluated once right after registration, for the content might
+     * have changed between the synchronous check of the caller and the registration.
+     *
+     * @param waiter as the pending request to be completed on the next relevant update.
+     */
+    void registerWaiter(UpdateListener waiter) {
+        addWaiter(waiter);
+        if (waiter.notifyUpdate())
+            removeWaiter(waiter);
+    }
+
+    /**
+     * Registers a pending request without evaluating it. The caller must evaluate the waiter after registration, e.g.
+     * once it is registered at several managers.
+     *
+     * @param waiter as the pending request to be evaluated on every update.
+     */
+    void addWaiter(UpdateListener waiter) {
+        if (waiters.add(waiter) && waiter.isCountedByManager())
+            AdmissionControl.waiterAdded();
+    }
+
+    /**
+     * Removes a pending request from the registry, e.g. because it timed out or the client disconnected. Has no effect
+     * if the waiter is not registered.
+     *
+     * @param waiter as the pending request to forget about.
+     */
+    void removeWaiter(UpdateListener waiter) {
+        if (waiters.remove(waiter) && waiter.isCountedByManager())
+            AdmissionControl.waiterRemoved();
+    }
+
+    /**
+     * Must be called before a thread is started to block on behalf of a pending request, so it is reflected in the
+     * amount of pending requests right away.
+     */
+    void blockingWaitStarted() {
+        blockingWaiterCount.incrementAndGet();
+        AdmissionControl.waiterAdded();
+    }
+
+    /**
+     * Must be called by threads that stop blocking on behalf of a pending request.
+     */
+    void blockingWaitFinished() {
+        blockingWaiterCount.decrementAndGet();
+        AdmissionControl.waiterRemoved();
+    }
+
+    /**
+     * Returns the amount of pending requests of this manager, that is requests that neither received an update nor
+     * timed out, failed or were cancelled. Covers registered requests (event-driven notification) and requests served
+     * by a dedicated thread.
+     *
+     * @return the amount of requests currently waiting for an update.
+     */
+    public int getPendingWaiterCount() {
+        return waiters.size() + blockingWaiterCount.get();
+    }
+
+    /**
+     * Sets the maximum amount of pending requests of this manager. Further requests that would have to wait for an
+     * update are rejected with 503 (Service Unavailable), see AdmissionControl.
+     *
+     * @param maxPendingWaiters as the limit, must be positive. AdmissionControl.UNLIMITED disables the limit (default).
+     */
+    public void setMaxPendingWaiters(int maxPendingWaiters) {
+        if (maxPendingWaiters < 1)
+            throw new IllegalArgumentException("Limit of pending requests must be positive.");
+        this.maxPendingWaiters = maxPendingWaiters;
+    }
+
+    /**
+     * Getter for the maximum amount of pending requests of this manager.
+     *
+     * @return the limit, or AdmissionControl.UNLIMITED.
+     */
+    public int getMaxPendingWaiters() {
+        return maxPendingWaiters;
+    }
+
+    /**
+     * Tells whether new requests that would have to wait are rejected, because the limit of this manager is reached.
+     *
+     * @return a flag whether this manager is saturated.
+     */
+    public boolean isSaturated() {
+        int limit = maxPendingWaiters;
+        return limit != AdmissionControl.UNLIMITED && getPendingWaiterCount() >= limit;
+    }
+
+    /**
+     * Hands all currently registered waiters to the dispatcher. Waiters that are done after evaluation are removed from
+     * the registry, all others stay registered for the next update. The registry is only copied by the dispatcher, so
+     * the updating thread returns right away, unless the fan-out policy lets it evaluate a small amount of waiters
+     * itself.
+     */
+    private void dispatchToWaiters() {
+        if (waiters.isEmpty())
+            return;
+
+        // Terminations are never paced, for they release every waiter with an empty reply. Pending waves are dropped.
+        DeliveryPacer activePacer = deliveryPacer;
+        if (activePacer != null) {
+            if (!isTerminated()) {
+                dispatchInWaves(activePacer);
+                return;
+            }
+            pacedFanOuts.incrementAndGet();
+        }
+
+        FanOutPolicy activePolicy = fanOutPolicy;
+        if (activePolicy != null && waiters.size() <= activePolicy.getInlineLimit()) {
+            ManagerMetrics activeMetrics = getMetrics();
+            long startTime = activeMetrics.startTimer();
+            evaluateWaiters(new ArrayList<>(waiters));
+            activeMetrics.fannedOut(startTime);
+            return;
+        }
+
+        // Reactive listeners are registered even if event-driven notification is not enabled. They are then evaluated
+        // by the default dispatcher.
+        Executor activeDispatcher = dispatcher == null ? DefaultDispatcher.POOL : dispatcher;
+        activeDispatcher.execute(() -> {
+            ManagerMetrics activeMetrics = getMetrics();
+            long startTime = activeMetrics.startTimer();
+            List<UpdateListener> pending = new ArrayList<>(waiters);
+            if (activePolicy == null || pending.size() <= activePolicy.getChunkSize()) {
+                evaluateWaiters(pending);
+                activeMetrics.fannedOut(startTime);
+                return;
+            }
+
+            // Hand all chunks but the last one to further dispatcher threads, the last one is evaluated right here. The
+            // fan-out is complete once the last chunk is done.
+            List<List<UpdateListener>> chunks = activePolicy.partition(pending);
+            AtomicInteger remainingChunks = new AtomicInteger(chunks.size());
+            Runnable chunkDone = () -> {
+                if (remainingChunks.decrementAndGet() == 0)
+                    activeMetrics.fannedOut(startTime);
+            };
+            for (List<UpdateListener> chunk : chunks.subList(0, chunks.size() - 1)) {
+                activeDispatcher.execute(() -> {
+                    evaluateWaiters(chunk);
+                    chunkDone.run();
+                });
+            }
+            evaluateWaiters(chunks.get(chunks.size() - 1));
+            chunkDone.run();
+        });
+    }
+
+    /**
+     * Hands the registered waiters to the dispatcher in waves, according to the pacer. The first wave is evaluated
+     * right away, each further wave one wave interval after the previous one. Waiters an earlier fan-out did not reach
+     * before it was superseded come first, so frequent updates do not release the same waiters over and over.
+     *
+     * @param activePacer as the pacer that determines size and interval of the waves.
+     */
+    private void dispatchInWaves(DeliveryPacer activePacer) {
+        long fanOut = pacedFanOuts.incrementAndGet();
+        Executor activeDispatcher = dispatcher == null ? DefaultDispatcher.POOL : dispatcher;
+        activeDispatcher.execute(() -> {
+            Set<UpdateListener> pending = new LinkedHashSet<>();
+            PacedFanOut previous = latestPacedFanOut.get();
+            if (previous != null) {
+                for (UpdateListener waiter : previous.getUnreleased()) {
+                    if (waiters.contains(waiter))
+                        pending.add(waiter);
+                }
+            }
+            pending.addAll(waiters);
+            int replySize = getCurrentSnapshot().getSerializedContent().getSerializedBytes().length;
+            PacedFanOut next = new PacedFanOut(new ArrayList<>(pending), activePacer, replySize, fanOut,
+                    activeDispatcher);
+            latestPacedFanOut.accumulateAndGet(next,
+                    (latest, candidate) -> latest == null || candidate.fanOut > latest.fanOut ? candidate : latest);
+            next.run();
+        });
+    }
+
+    /**
+     * The remaining waves of a paced fan-out. Each run evaluates one wave and schedules the next one. Once a later
+     * fan-out started, the remaining waves are dropped and their waiters are handed to the later fan-out. The delivery
+     * spread, from the first to the last wave, is reported once the last wave is done or the remaining waves were
+     * dropped.
+     */
+    private class PacedFanOut implements Runnable {
+
+        private final List<UpdateListener> pending;
+        private final int waveSize;
+        private final long waveInterval;
+        private final long fanOut;
+        private final Executor activeDispatcher;
+        private final ManagerMetrics activeMetrics = getMetrics();
+        private final long startTime = activeMetrics.startTimer();
+        // index of the first waiter of the next wave. Only written by one wave at a time, read by later fan-outs.
+        private volatile int waveStart = 0;
+
+        PacedFanOut(List<UpdateListener> pending, DeliveryPacer activePacer, int replySize, long fanOut,
+                    Executor activeDispatcher) {
+            this.pending = pending;
+            this.waveSize = activePacer.waveSize(replySize);
+            this.waveInterval = activePacer.getWaveInterval();
+            this.fanOut = fanOut;
+            this.activeDispatcher = activeDispatcher;
+        }
+
+        @Override
+        public void run() {
+            // The waiters of a superseded fan-out are still registered, so the later fan-out covers them first.
+            if (pacedFanOuts.get() != fanOut) {
+                activeMetrics.deliverySpread(startTime);
+                return;
+            }
+
+            int waveEnd = (int) Math.min(pending.size(), (long) waveStart + waveSize);
+            evaluateWaiters(pending.subList(waveStart, waveEnd));
+            waveStart = waveEnd;
+            if (waveEnd == pending.size()) {
+                latestPacedFanOut.compareAndSet(this, null);
+                activeMetrics.deliverySpread(startTime);
+                return;
+            }
+
+            // The timer only hands the next wave to the dispatcher, it does not evaluate waiters itself.
+            DefaultScheduler.TIMER.schedule(() -> activeDispatcher.execute(this), waveInterval, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Returns the waiters this fan-out did not evaluate yet, in the order of the remaining waves.
+         *
+         * @return a view on the waiters of the remaining waves.
+         */
+        List<UpdateListener> getUnreleased() {
+            return pending.subList(waveStart, pending.size());
+        }
+    }
+
+    /**
+     * Evaluates the provided waiters and removes those that are done from the registry.
+     *
+     * @param pending as the waiters to evaluate.
+     */
+    private void evaluateWaiters(List<UpdateListener> pending) {
+        for (UpdateListener waiter : pending) {
+            if (waiter.notifyUpdate())
+                removeWaiter(waiter);
+        }
+    }
+
+    /**
+     * Sets how registered waiters are evaluated on content changes, see FanOutPolicy. Only relevant for requests and
+     * streams registered at this manager, e.g. with event-driven notification.
+     *
+     * @param fanOutPolicy as the new policy, or null to evaluate all waiters by a single dispatcher task (default).
+     */
+    public void setFanOutPolicy(FanOutPolicy fanOutPolicy) {
+        this.fanOutPolicy = fanOutPolicy;
+    }
+
+    /**
+     * Getter for the policy applied to the evaluation of registered waiters.
+     *
+     * @return the fan-out policy, or null if all waiters are evaluated by a single dispatcher task.
+     */
+    public FanOutPolicy getFanOutPolicy() {
+        return fanOutPolicy;
+    }
+
+    /**
+     * Limits the rate at which registered waiters are released on content changes, see DeliveryPacer. Paced fan-outs
+     * evaluate each wave by a single dispatcher task, the chunking of the fan-out policy does not apply to them.
+     *
+     * @param deliveryPacer as the new pacer, or null to release all waiters right away (default).
+     */
+    public void setDeliveryPacer(DeliveryPacer deliveryPacer) {
+        this.deliveryPacer = deliveryPacer;
+    }
+
+    /**
+     * Getter for the pacer applied to the release of registered waiters.
+     *
+     * @return the delivery pacer, or null if all waiters are released right away.
+     */
+    public DeliveryPacer getDeliveryPacer() {
+        return deliveryPacer;
+    }
+
+    /**
+     * Sets a policy to collapse rapid updates (and touches) into a single notification, carrying the latest state. See
+     * CoalescingPolicy for the available rules. Pending updates of a previous policy are published right away.
+     *
+     * @param coalescingPolicy as the new policy, or null to publish every update right away (default).
+     */
+    public synchronized void setCoalescingPolicy(CoalescingPolicy coalescingPolicy) {
+        UpdateCoalescer<C> previousCoalescer = coalescer;
+        coalescer = coalescingPolicy == null ? null : new UpdateCoalescer<>(this, coalescingPolicy,
+                DefaultScheduler.TIMER, coalescedUpdateCount);
+        if (previousCoalescer != null)
+            previousCoalescer.publishNow();
+    }
+
+    /**
+     * Getter to look up how rapid updates are collapsed.
+     *
+     * @return the coalescing policy, or null if every update is published right away.
+     */
+    public CoalescingPolicy getCoalescingPolicy() {
+        UpdateCoalescer<C> activeCoalescer = coalescer;
+        return activeCoalescer == null ? null : activeCoalescer.getPolicy();
+    }
+
+    /**
+     * Returns how many updates (and touches) were not published on their own, because a later update replaced them
+     * within the coalescing window.
+     *
+     * @return the amount of coalesced updates since creation of this manager.
+     */
+    public long getCoalescedUpdateCount() {
+        return coalescedUpdateCount.get();
+    }
+
+    /**
+     * Sets how updates are compared to the current content. See SyncMode for details.
+     *
+     * @param syncMode as the new sync mode. Must not be null.
+     */
+    public void setSyncMode(SyncMode syncMode) {
+        if (syncMode == null)
+            throw new NullPointerException("Sync mode must not be null.");
+        this.syncMode = syncMode;
+    }
+
+    /**
+     * Getter to look up how updates are compared to the current content.
+     *
+     * @return the sync mode of this manager.
+     */
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    /**
+     * Sets the hash function used for content hashes. MD5 is the default, for compatibility with existing clients.
+     * Clients that use hash-based updates must compute their hashes with the same algorithm. Should be set before
+     * clients start polling, for the hash of the current content changes with the algorithm.
+     *
+     * @param hashAlgorithm as the new hash algorithm. Must not be null.
+     */
+    public void setHashAlgorithm(HashAlgorithm hashAlgorithm) {
+        if (hashAlgorithm == null)
+            throw new NullPointerException("Hash algorithm must not be null.");
+        serializer = serializer.withHashAlgorithm(hashAlgorithm);
+
+        // Re-capture the current content with the new rules. This is not a content change, the version stays.
+        synchronized (history) {
+            BroadcastState<C> current;
+            ContentSnapshot<C> recaptured;
+            do {
+                current = state.get();
+                recaptured = new ContentSnapshot<>(current.getSnapshot().getVersion(), serializer,
+                        current.getSnapshot().getContent());
+            } while (!state.compareAndSet(current, current.withSnapshot(recaptured)));
+            if (!history.isEmpty() && history.peekLast() == current.getSnapshot()) {
+                history.removeLast();
+                history.addLast(recaptured);
+            }
+        }
+    }
+
+    /**
+     * Getter to look up the hash function used for content hashes.
+     *
+     * @return the hash algorithm of this manager.
+     */
+    public HashAlgorithm getHashAlgorithm() {
+        return serializer.getHashAlgorithm();
+    }
+
+    /**
+     * Registers an additional serialization format, e.g. CBOR or Smile, for clients that request it by their Accept
+     * header (see ByteResponseGenerator.getNegotiatedHashBasedUpdate). The content is serialized into each format at
+     * most once per version, and only if requested. Hashes and versions stay based on the JSON serialization, so
+     * clients can switch formats without receiving spurious updates. Registering a media type again replaces its
+     * format.
+     *
+     * @param mediaType    as the concrete media type of the format, e.g. "application/cbor".
+     * @param objectMapper as the mapper that produces the format, e.g. new ObjectMapper(new CBORFactory()).
+     */
+    public synchronized void registerFormat(String mediaType, ObjectMapper objectMapper) {
+        if (objectMapper == null)
+            throw new NullPointerException("Object mapper must not be null.");
+        MediaType parsedMediaType = MediaType.parseMediaType(mediaType);
+        if (parsedMediaType.isWildcardType() || parsedMediaType.isWildcardSubtype())
+            throw new IllegalArgumentException("Media type of a format must be concrete: " + mediaType);
+        if (parsedMediaType.isCompatibleWith(MediaType.APPLICATION_JSON))
+            throw new IllegalArgumentException("JSON is the default format and can not be replaced: " + mediaType);
+
+        List<ContentFormat> updatedFormats = new ArrayList<>(formats.size() + 1);
+        for (ContentFormat format : formats)
+            if (!format.getMediaType().equalsTypeAndSubtype(parsedMediaType))
+                updatedFormats.add(format);
+        updatedFormats.add(new ContentFormat(parsedMediaType, objectMapper.writer()));
+        formats = Collections.unmodifiableList(updatedFormats);
+    }
+
+    /**
+     * Returns the additional serialization formats, in order of registration.
+     *
+     * @return the registered formats, JSON excluded.
+     */
+    List<ContentFormat> getFormats() {
+        return formats;
+    }
+
+    /**
+     * Replaces the metrics of this manager, see MicrometerMetrics.bind. Applies to content versions published from now
+     * on.
+     *
+     * @param metrics as the receiver of all future measurements.
+     */
+    synchronized void setMetrics(ManagerMetrics metrics) {
+        if (metrics == null)
+            throw new NullPointerException("Metrics must not be null.");
+        serializer = serializer.withMetrics(metrics);
+    }
+
+    /**
+     * @return the receiver of the measurements of this manager, NOOP unless metrics are bound.
+     */
+    ManagerMetrics getMetrics() {
+        return serializer.getMetrics();
+    }
+
+    /**
+     * Returns the version of the currently stored content. The version is incremented on every content change and can
+     * be used for version based updates, as a constant-time alternative to the content hash.
+     *
+     * @return the content version.
+     */
+    public long getContentVersion() {
+        return getCurrentSnapshot().getVersion();
+    }
 
     /**
      * Getter to tell whether this BroadcastContentManager declines further updates.
@@ -126,17 +877,27 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      * @return a flag to indicate if this manager is already terminated.
      */
     public boolean isTerminated() {
-        return terminated;
+        return state.get().isTerminated();
     }
 
     /**
-     * Returns the md5-sum of the serialized version of the currently stored content. This can be used to avoid status
-     * updates when the managed content hs not actually changed.
+     * Returns the hash (md5-sum by default) of the serialized version of the currently stored content. This can be used
+     * to avoid status updates when the managed content hs not actually changed.
      *
      * @return the hash of the content.
      */
     public String getContentHash() {
-        return BroadcastContentHasher.hash(objectMapper.writer(), currentBroadcastContent);
+        return getCurrentSnapshot().getSerializedContent().getHash();
+    }
+
+    /**
+     * Returns the UTF-8 encoded JSON serialization of the current content, as read-only view on the bytes shared by all
+     * replies for this version. Neither serializes nor copies the content, unless this version was not serialized yet.
+     *
+     * @return the serialization of the current content.
+     */
+    public ByteBuffer getSerializedBroadcastContent() {
+        return ByteBuffer.wrap(getCurrentSnapshot().getSerializedContent().getSerializedBytes()).asReadOnlyBuffer();
     }
 
     /**
@@ -145,7 +906,17 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      * @return current broadcast content.
      */
     public C getCurrentBroadcastContent() {
-        return currentBroadcastContent;
+        return getCurrentSnapshot().getContent();
+    }
+
+    /**
+     * Getter for the immutable snapshot of the current content. Subscribers should evaluate the snapshot rather than
+     * the raw content, so serialization and hash are shared.
+     *
+     * @return current content snapshot.
+     */
+    ContentSnapshot<C> getCurrentSnapshot() {
+        return state.get().getSnapshot();
     }
 
 
@@ -157,7 +928,7 @@ public class BroadcastContentManager<C extends BroadcastContent> {
      */
     // TODO: Verify if needed.
     public ObjectWriter getImmutableSerializer() {
-        return objectMapper.writer();
+        return serializer.getObjectWriter();
     }
 
     /**
@@ -175,12 +946,13 @@ public class BroadcastContentManager<C extends BroadcastContent> {
     }
 
     /**
-     * Returns the hash computed for a provided BroadcastContent, using the serializer associated to this BCM.
+     * Returns the hash computed for a provided BroadcastContent, using the serializer and hash algorithm associated to
+     * this BCM.
      *
-     * @return String md5 hash of the received object, serialized with serializer associated to this BCM.
+     * @return String hash of the received object, serialized with serializer associated to this BCM.
      */
     public String getHashOfCustomContentUsingAssociatedSerializer(BroadcastContent customContent) {
 
-        return BroadcastContentHasher.hash(objectMapper.writer(), customContent);
+        return serializer.hash(customContent);
     }
 }
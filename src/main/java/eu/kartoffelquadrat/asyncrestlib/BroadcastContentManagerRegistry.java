@@ -0,0 +1,380 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keyed registry of BroadcastContentManagers, e.g. one per game session. Managers are created lazily on first lookup
+ * and evicted once they were not looked up for the idle timeout and have no pending requests. Managers without pending
+ * requests that were not looked up for half the idle timeout are only softly referenced, so the garbage collector can
+ * reclaim them under memory pressure. An evicted or reclaimed manager is replaced by a new one, with initial content,
+ * on the next lookup. Managers should therefore always be looked up by key, rather than kept by the caller. Versions
+ * of a new manager continue above the versions observed of any earlier manager of the registry, so version based
+ * clients of an evicted manager receive the initial content of its replacement.
+ * <p>
+ * All managers of a registry share a single serializer and, if event-driven notification is enabled, a single
+ * dispatcher. The registry is split into independent shards, so concurrent lookups and creations of different keys
+ * scale across cores. Idle managers are swept shard by shard, on the library's timer thread.
+ *
+ * @param <K> as the type of the keys, e.g. session ids. Must implement equals and hashCode.
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @author Maximilian Schiedermeier
+ */
+public class BroadcastContentManagerRegistry<K, C extends BroadcastContent> {
+
+    // marks an entry as evicted, in place of its last access time.
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    private final ObjectMapper objectMapper;
+    private final ContentSerializer serializer;
+    private final Function<? super K, ? extends C> initialContentFactory;
+    private final long idleTimeoutNanos;
+    private final Map<K, Entry<C>>[] shards;
+    // highest content version observed of any manager of this registry, on sweeps and removals. New managers start
+    // above it.
+    private final AtomicLong versionFloor = new AtomicLong();
+    private final ScheduledFuture<?> sweep;
+    private volatile Executor dispatcher;
+    private volatile Consumer<BroadcastContentManager<C>> managerInitializer = manager -> {
+    };
+
+    /**
+     * Creates a registry whose managers use the default ObjectMapper.
+     *
+     * @param initialContentFactory as the function that provides the initial content of a lazily created manager.
+     * @param idleTimeoutMillis     as the amount of milliseconds a manager without pending requests is retained since
+     *                              its last lookup.
+     */
+    public BroadcastContentManagerRegistry(Function<? super K, ? extends C> initialContentFactory,
+                                           long idleTimeoutMillis) {
+        this(new ObjectMapper(), initialContentFactory, idleTimeoutMillis);
+    }
+
+    /**
+     * Creates a registry whose managers share a custom ObjectMapper.
+     *
+     * @param objectMapper          as user provided serializer that applies custom rules during serialization.
+     * @param initialContentFactory as the function that provides the initial content of a lazily created manager.
+     * @param idleTimeoutMillis     as the amount of milliseconds a manager without pending requests is retained since
+     *                              its last lookup.
+     */
+    @SuppressWarnings("unchecked")
+    public BroadcastContentManagerRegistry(ObjectMapper objectMapper,
+                                           Function<? super K, ? extends C> initialContentFactory,
+                                           long idleTimeoutMillis) {
+        if (idleTimeoutMillis <= 0)
+            throw new IllegalArgumentException("Idle timeout must be positive.");
+        this.objectMapper = objectMapper;
+        this.serializer = new ContentSerializer(objectMapper.writer(), HashAlgorithm.MD5);
+        this.initialContentFactory = initialContentFactory;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+
+        // a power of two, so the shard of a key is found by bit mask.
+        int shardCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+        shards = (Map<K, Entry<C>>[]) new Map<?, ?>[shardCount];
+        for (int i = 0; i < shardCount; i++)
+            shards[i] = new ConcurrentHashMap<>();
+
+        // Every shard is swept about four times per idle timeout. The sweeper does not keep the registry alive.
+        long sweepIntervalNanos = Math.max(idleTimeoutNanos / (4 * shardCount), TimeUnit.MILLISECONDS.toNanos(1));
+        Sweeper<K, C> sweeper = new Sweeper<>(this);
+        sweep = DefaultScheduler.TIMER.scheduleWithFixedDelay(sweeper, sweepIntervalNanos, sweepIntervalNanos,
+                TimeUnit.NANOSECONDS);
+        sweeper.sweep = sweep;
+    }
+
+    /**
+     * Enables event-driven notification for all managers of this registry, using the default dispatcher. See
+     * BroadcastContentManager.enableEventDrivenNotification.
+     */
+    public void enableEventDrivenNotification() {
+        enableEventDrivenNotification(DefaultDispatcher.POOL);
+    }
+
+    /**
+     * Enables event-driven notification for all managers of this registry, using a shared custom dispatcher. Applies to
+     * existing and future managers.
+     *
+     * @param dispatcher as the executor that evaluates and completes pending requests on content changes.
+     */
+    public void enableEventDrivenNotification(Executor dispatcher) {
+        if (dispatcher == null)
+            throw new NullPointerException("Dispatcher must not be null.");
+        this.dispatcher = dispatcher;
+        for (Map<K, Entry<C>> shard : shards) {
+            for (Entry<C> entry : shard.values()) {
+                BroadcastContentManager<C> manager = entry.getManager();
+                if (manager != null)
+                    manager.enableEventDrivenNotification(dispatcher);
+            }
+        }
+    }
+
+    /**
+     * Sets an action that configures every newly created manager, e.g. its history capacity or coalescing policy.
+     * Applies to future managers only.
+     *
+     * @param managerInitializer as the configuration to apply on creation.
+     */
+    public void setManagerInitializer(Consumer<BroadcastContentManager<C>> managerInitializer) {
+        if (managerInitializer == null)
+            throw new NullPointerException("Manager initializer must not be null.");
+        this.managerInitializer = managerInitializer;
+    }
+
+    /**
+     * Looks up the manager of the provided key. If there is none (or it was evicted), a new manager with the initial
+     * content of the key is created. Every lookup resets the idle time of the manager.
+     *
+     * @param key as the key of the observed resource.
+     * @return the manager of the key.
+     */
+    @SuppressWarnings("unchecked")
+    public BroadcastContentManager<C> get(K key) {
+        Map<K, Entry<C>> shard = shardOf(key);
+
+        // Fast path: the manager exists and is strongly referenced.
+        Entry<C> entry = shard.get(key);
+        if (entry != null) {
+            BroadcastContentManager<C> manager = entry.strongManager;
+            if (manager != null && entry.touch())
+                return manager;
+        }
+
+        // Slow path: create the manager, or strengthen a softly referenced one. Runs atomically per key.
+        Object[] result = new Object[1];
+        shard.compute(key, (k, existing) -> {
+            if (existing != null) {
+                BroadcastContentManager<C> manager = existing.strengthen();
+                if (manager != null && existing.touch()) {
+                    result[0] = manager;
+                    return existing;
+                }
+            }
+            BroadcastContentManager<C> manager = createManager(k);
+            result[0] = manager;
+            return new Entry<>(manager);
+        });
+        return (BroadcastContentManager<C>) result[0];
+    }
+
+    /**
+     * Looks up the manager of the provided key, without creating one. Does not reset the idle time.
+     *
+     * @param key as the key of the observed resource.
+     * @return the manager of the key, or null if there is none.
+     */
+    public BroadcastContentManager<C> getIfPresent(K key) {
+        Entry<C> entry = shardOf(key).get(key);
+        return entry == null ? null : entry.getManager();
+    }
+
+    /**
+     * Removes the manager of the provided key right away, regardless of pending requests. The manager is not
+     * terminated, this is up to the caller.
+     *
+     * @param key as the key of the observed resource.
+     * @return the removed manager, or null if there was none.
+     */
+    public BroadcastContentManager<C> remove(K key) {
+        Entry<C> entry = shardOf(key).remove(key);
+        if (entry == null)
+            return null;
+        BroadcastContentManager<C> manager = entry.getManager();
+        if (manager != null)
+            raiseVersionFloor(manager);
+        return manager;
+    }
+
+    /**
+     * Returns the amount of managers currently held, including softly referenced ones.
+     *
+     * @return the amount of managers in this registry.
+     */
+    public int size() {
+        int size = 0;
+        for (Map<K, Entry<C>> shard : shards)
+            size += shard.size();
+        return size;
+    }
+
+    /**
+     * Evicts all managers that exceeded the idle timeout and have no pending requests, right away. Eviction otherwise
+     * happens periodically in the background.
+     *
+     * @return the amount of evicted managers.
+     */
+    public int evictIdle() {
+        int evicted = 0;
+        for (int i = 0; i < shards.length; i++)
+            evicted += sweep(i);
+        return evicted;
+    }
+
+    /**
+     * Stops the background eviction. The registry stays usable, but idle managers are only evicted by evictIdle().
+     */
+    public void close() {
+        sweep.cancel(false);
+    }
+
+    private BroadcastContentManager<C> createManager(K key) {
+        BroadcastContentManager<C> manager = new BroadcastContentManager<>(objectMapper, serializer,
+                initialContentFactory.apply(key), versionFloor.get() + 1);
+        Executor sharedDispatcher = dispatcher;
+        if (sharedDispatcher != null)
+            manager.enableEventDrivenNotification(sharedDispatcher);
+        managerInitializer.accept(manager);
+        return manager;
+    }
+
+    private void raiseVersionFloor(BroadcastContentManager<C> manager) {
+        versionFloor.accumulateAndGet(manager.getContentVersion(), Math::max);
+    }
+
+    private Map<K, Entry<C>> shardOf(K key) {
+        int hash = key.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    /**
+     * Evicts idle managers of a single shard, and only softly references managers that are about to become idle.
+     *
+     * @param shardIndex as the index of the shard to sweep.
+     * @return the amount of evicted managers.
+     */
+    private int sweep(int shardIndex) {
+        int evicted = 0;
+        long now = System.nanoTime();
+        Map<K, Entry<C>> shard = shards[shardIndex];
+        for (Map.Entry<K, Entry<C>> mapEntry : shard.entrySet()) {
+            Entry<C> entry = mapEntry.getValue();
+            BroadcastContentManager<C> manager = entry.getManager();
+
+            // Reclaimed by the garbage collector.
+            if (manager == null) {
+                if (shard.remove(mapEntry.getKey(), entry))
+                    evicted++;
+                continue;
+            }
+            // Recorded on every visit, for a manager might be reclaimed before the next one.
+            raiseVersionFloor(manager);
+            if (manager.getPendingWaiterCount() > 0)
+                continue;
+
+            // Eviction only succeeds if there was no lookup since the access time the idle time is based on.
+            long lastAccess = entry.getLastAccess();
+            long idleTime = lastAccess == EVICTED ? Long.MAX_VALUE : now - lastAccess;
+            if (idleTime >= idleTimeoutNanos) {
+                if (entry.evict(lastAccess) && shard.remove(mapEntry.getKey(), entry))
+                    evicted++;
+            } else if (idleTime >= idleTimeoutNanos / 2)
+                entry.soften();
+        }
+        return evicted;
+    }
+
+    /**
+     * Holds a manager, either strongly or softly referenced, together with its last lookup time.
+     */
+    private static class Entry<C extends BroadcastContent> {
+
+        private final SoftReference<BroadcastContentManager<C>> softManager;
+        // null while the manager is only softly referenced.
+        private volatile BroadcastContentManager<C> strongManager;
+        // nano time of the last lookup, or EVICTED. Strictly increases with every lookup, so an eviction can tell
+        // whether a lookup happened since it read the value.
+        private final AtomicLong lastAccess = new AtomicLong(System.nanoTime());
+
+        Entry(BroadcastContentManager<C> manager) {
+            this.softManager = new SoftReference<>(manager);
+            this.strongManager = manager;
+        }
+
+        BroadcastContentManager<C> getManager() {
+            BroadcastContentManager<C> manager = strongManager;
+            return manager != null ? manager : softManager.get();
+        }
+
+        /**
+         * Resets the idle time, unless the entry was evicted concurrently.
+         *
+         * @return false if the entry is evicted and must not be used any more.
+         */
+        boolean touch() {
+            long now = System.nanoTime();
+            while (true) {
+                long previousAccess = lastAccess.get();
+                if (previousAccess == EVICTED)
+                    return false;
+                if (lastAccess.compareAndSet(previousAccess, Math.max(now, previousAccess + 1)))
+                    return true;
+            }
+        }
+
+        /**
+         * Marks the entry as evicted, unless it was looked up since the provided access time was read.
+         *
+         * @param expectedAccess as the last access time the eviction decision is based on.
+         * @return true if the entry was marked as evicted.
+         */
+        boolean evict(long expectedAccess) {
+            return expectedAccess != EVICTED && lastAccess.compareAndSet(expectedAccess, EVICTED);
+        }
+
+        /**
+         * @return the nano time of the last lookup, or EVICTED.
+         */
+        long getLastAccess() {
+            return lastAccess.get();
+        }
+
+        void soften() {
+            strongManager = null;
+        }
+
+        BroadcastContentManager<C> strengthen() {
+            BroadcastContentManager<C> manager = softManager.get();
+            strongManager = manager;
+            return manager;
+        }
+    }
+
+    /**
+     * Periodically sweeps one shard after another. Only weakly references the registry, and cancels itself once the
+     * registry was garbage collected.
+     */
+    private static class Sweeper<K, C extends BroadcastContent> implements Runnable {
+
+        private final WeakReference<BroadcastContentManagerRegistry<K, C>> registry;
+        private volatile ScheduledFuture<?> sweep;
+        private int nextShard = 0;
+
+        Sweeper(BroadcastContentManagerRegistry<K, C> registry) {
+            this.registry = new WeakReference<>(registry);
+        }
+
+        @Override
+        public void run() {
+            BroadcastContentManagerRegistry<K, C> activeRegistry = registry.get();
+            if (activeRegistry == null) {
+                ScheduledFuture<?> scheduledSweep = sweep;
+                if (scheduledSweep != null)
+                    scheduledSweep.cancel(false);
+                return;
+            }
+            activeRegistry.sweep(nextShard);
+            nextShard = (nextShard + 1) % activeRegistry.shards.length;
+        }
+    }
+}
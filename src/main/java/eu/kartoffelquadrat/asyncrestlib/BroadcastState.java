@@ -0,0 +1,70 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Immutable state of a BroadcastContentManager: the current content snapshot (content, version, serialization), the
+ * latch that is released on the next change, and the terminated flag. The manager swaps the entire state atomically,
+ * so readers always observe a consistent combination, without taking any lock. A snapshot and the latch of the same
+ * state belong together: the latch is released as soon as the state is replaced.
+ *
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @author Maximilian Schiedermeier
+ */
+class BroadcastState<C extends BroadcastContent> {
+
+    // latch of terminated states. There is no next change to wait for, so it is released from the start.
+    private static final CountDownLatch RELEASED_LATCH = new CountDownLatch(0);
+
+    private final ContentSnapshot<C> snapshot;
+    private final CountDownLatch stateUpdateLatch;
+    private final boolean terminated;
+
+    private BroadcastState(ContentSnapshot<C> snapshot, CountDownLatch stateUpdateLatch, boolean terminated) {
+        this.snapshot = snapshot;
+        this.stateUpdateLatch = stateUpdateLatch;
+        this.terminated = terminated;
+    }
+
+    /**
+     * Creates an active state with a fresh latch.
+     *
+     * @param snapshot as the current content snapshot.
+     * @return the new state.
+     */
+    static <C extends BroadcastContent> BroadcastState<C> active(ContentSnapshot<C> snapshot) {
+        return new BroadcastState<>(snapshot, new CountDownLatch(1), false);
+    }
+
+    /**
+     * Creates the terminated successor of this state. The content stays, the latch is already released.
+     *
+     * @return the terminated state.
+     */
+    BroadcastState<C> terminate() {
+        return new BroadcastState<>(snapshot, RELEASED_LATCH, true);
+    }
+
+    /**
+     * Creates a copy of this state with a re-captured snapshot of the same version. Not a content change, so the latch
+     * is retained.
+     *
+     * @param recaptured as the snapshot that replaces the current one.
+     * @return the new state.
+     */
+    BroadcastState<C> withSnapshot(ContentSnapshot<C> recaptured) {
+        return new BroadcastState<>(recaptured, stateUpdateLatch, terminated);
+    }
+
+    ContentSnapshot<C> getSnapshot() {
+        return snapshot;
+    }
+
+    CountDownLatch getStateUpdateLatch() {
+        return stateUpdateLatch;
+    }
+
+    boolean isTerminated() {
+        return terminated;
+    }
+}
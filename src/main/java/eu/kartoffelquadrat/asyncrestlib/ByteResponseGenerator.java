@@ -0,0 +1,246 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Byte oriented counterpart of the ResponseGenerator. Replies carry the UTF-8 encoded JSON serialization as byte[]
+ * body, rather than as String. The bytes are produced once per content version (and transformation), then the very
+ * same array is handed to every client. Spring writes byte[] bodies as they are, so there is no per-request encoding
+ * or copying of the content. Return codes, headers and semantics are the same as for the ResponseGenerator, 200 (OK)
+ * replies furthermore declare the content type application/json;charset=UTF-8.
+ * <p>
+ * The negotiated variants furthermore serve additional formats registered at the manager, e.g. CBOR, as requested by
+ * the Accept header of the client (see BroadcastContentManager.registerFormat).
+ * <p>
+ * The returned arrays are shared and must not be modified.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public class ByteResponseGenerator {
+
+    /**
+     * Byte variant of ResponseGenerator.getAsyncUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getAsyncUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager) {
+
+        return ResponseGenerator.getDeferredResult(longPollTimeout, broadcastContentManager, null,
+                new IdentityTransformer<>(), null, ReplyBody.BYTES);
+    }
+
+    /**
+     * Byte variant of ResponseGenerator.getHashBasedUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the BroadcastContent held by the client. Must not be null.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getHashBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash) {
+
+        return getTransformedUpdate(longPollTimeout, broadcastContentManager, broadcastContentHash,
+                new IdentityTransformer<>(), null);
+    }
+
+    /**
+     * Byte variant of ResponseGenerator.getTransformedUpdate. Transformed views are serialized once per content
+     * version, transformer and tag.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the transformed BroadcastContent held by the client. Must not be null.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be returned to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized transformed BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getTransformedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, Transformer<C> transformer, String transformTag) {
+        if (broadcastContentHash == null)
+            throw new NullPointerException("BroadcastContentHash is null. Use getAsyncUpdate(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
+
+        return ResponseGenerator.getDeferredResult(longPollTimeout, broadcastContentManager, broadcastContentHash,
+                transformer, transformTag, ReplyBody.BYTES);
+    }
+
+    /**
+     * Byte variant of ResponseGenerator.getVersionBasedUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getVersionBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion) {
+
+        return getTransformedVersionBasedUpdate(longPollTimeout, broadcastContentManager, clientContentVersion,
+                new IdentityTransformer<>(), null);
+    }
+
+    /**
+     * Byte variant of ResponseGenerator.getTransformedVersionBasedUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be returned to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized transformed BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getTransformedVersionBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion, Transformer<C> transformer, String transformTag) {
+
+        return ResponseGenerator.getVersionBasedDeferredResult(longPollTimeout, broadcastContentManager,
+                clientContentVersion, transformer, transformTag, ReplyBody.BYTES);
+    }
+
+    /**
+     * Byte variant of ResponseGenerator.getUpdatesSince. The list is composed of the shared serializations of the
+     * listed versions, without encoding them again.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the list of missed BroadCastContent revisions in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getUpdatesSince(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion) {
+
+        DeferredResult<ResponseEntity<byte[]>> deferredResult = ResponseGenerator.createDeferredResult(longPollTimeout,
+                broadcastContentManager);
+        if (deferredResult.isSetOrExpired())
+            return deferredResult;
+
+        return ResponseGenerator.awaitRelevantUpdate(longPollTimeout, broadcastContentManager, UpdateWaiter.forCatchUp(
+                broadcastContentManager, clientContentVersion, ReplyBody.BYTES, deferredResult), deferredResult);
+    }
+
+    /**
+     * Byte variant of ResponseGenerator.getDeltaUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the patch or the full BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getDeltaUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion) {
+
+        DeferredResult<ResponseEntity<byte[]>> deferredResult = ResponseGenerator.createDeferredResult(longPollTimeout,
+                broadcastContentManager);
+        if (deferredResult.isSetOrExpired())
+            return deferredResult;
+
+        return ResponseGenerator.awaitRelevantUpdate(longPollTimeout, broadcastContentManager, UpdateWaiter.forDelta(
+                broadcastContentManager, clientContentVersion, ReplyBody.BYTES, deferredResult), deferredResult);
+    }
+
+    /**
+     * Variant of getHashBasedUpdate that replies in the format preferred by the client, JSON or any format registered
+     * at the manager (see BroadcastContentManager.registerFormat). The content is serialized at most once per version
+     * and format. The hash provided by the client is always the hash of the JSON serialization, so the reply format
+     * does not affect whether an update is relevant. Clients that accept no available format receive a 406 (Not
+     * Acceptable).
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the BroadcastContent held by the client. Must not be null.
+     * @param accept                  the value of the Accept request header. Can be null, which selects JSON.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getNegotiatedHashBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, String accept) {
+
+        return getNegotiatedTransformedUpdate(longPollTimeout, broadcastContentManager, broadcastContentHash,
+                new IdentityTransformer<>(), null, accept);
+    }
+
+    /**
+     * Variant of getTransformedUpdate that replies in the format preferred by the client. See
+     * getNegotiatedHashBasedUpdate for details.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the JSON serialization of the transformed BroadcastContent held by the
+     *                                client. Must not be null.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be returned to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param accept                  the value of the Accept request header. Can be null, which selects JSON.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized transformed BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getNegotiatedTransformedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, Transformer<C> transformer, String transformTag, String accept) {
+        if (broadcastContentHash == null)
+            throw new NullPointerException("BroadcastContentHash is null. Use getAsyncUpdate(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
+
+        ReplyBody<byte[]> replyBody = negotiate(broadcastContentManager, accept);
+        if (replyBody == null)
+            return notAcceptable(longPollTimeout);
+        return ResponseGenerator.getDeferredResult(longPollTimeout, broadcastContentManager, broadcastContentHash,
+                transformer, transformTag, replyBody);
+    }
+
+    /**
+     * Variant of getVersionBasedUpdate that replies in the format preferred by the client. See
+     * getNegotiatedHashBasedUpdate for details.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param accept                  the value of the Accept request header. Can be null, which selects JSON.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a DeferredResult that wraps the serialized BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getNegotiatedVersionBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion, String accept) {
+
+        ReplyBody<byte[]> replyBody = negotiate(broadcastContentManager, accept);
+        if (replyBody == null)
+            return notAcceptable(longPollTimeout);
+        return ResponseGenerator.getVersionBasedDeferredResult(longPollTimeout, broadcastContentManager,
+                clientContentVersion, new IdentityTransformer<>(), null, replyBody);
+    }
+
+    /**
+     * Selects the reply body representation for the format preferred by the client.
+     *
+     * @return the representation, null if the client accepts no available format.
+     */
+    private static ReplyBody<byte[]> negotiate(BroadcastContentManager<?> broadcastContentManager, String accept) {
+        try {
+            return ReplyBody.formatted(ContentFormat.negotiate(accept, broadcastContentManager.getFormats()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static DeferredResult<ResponseEntity<byte[]>> notAcceptable(long longPollTimeout) {
+        DeferredResult<ResponseEntity<byte[]>> deferredResult = new DeferredResult<>(longPollTimeout);
+        deferredResult.setErrorResult(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build());
+        return deferredResult;
+    }
+}
@@ -0,0 +1,93 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+/**
+ * Describes how a BroadcastContentManager collapses rapid content updates into a single notification. Updates within
+ * a coalescing window are not published one by one: only the latest update is published once the window closes, so
+ * subscribers are woken up once, with the latest state. Two rules can be combined:
+ * <ul>
+ * <li>Minimum interval: at most one publication per interval. The first update after a quiet interval is published
+ * right away.</li>
+ * <li>Debounce: an update is published once no further update arrived for the quiet period, but no later than the
+ * maximum latency after the first pending update.</li>
+ * </ul>
+ * Instances are immutable.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public final class CoalescingPolicy {
+
+    private final long minIntervalMillis;
+    private final long quietPeriodMillis;
+    private final long maxLatencyMillis;
+
+    private CoalescingPolicy(long minIntervalMillis, long quietPeriodMillis, long maxLatencyMillis) {
+        if (minIntervalMillis < 0 || quietPeriodMillis < 0)
+            throw new IllegalArgumentException("Coalescing intervals must not be negative.");
+        if (maxLatencyMillis < quietPeriodMillis)
+            throw new IllegalArgumentException("Max latency must not be shorter than the quiet period.");
+        this.minIntervalMillis = minIntervalMillis;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * Creates a policy that publishes at most one update per interval, e.g. to cap notifications of a game loop.
+     *
+     * @param minIntervalMillis as the minimum amount of milliseconds between two publications.
+     * @return the policy.
+     */
+    public static CoalescingPolicy minInterval(long minIntervalMillis) {
+        return new CoalescingPolicy(minIntervalMillis, 0, 0);
+    }
+
+    /**
+     * Creates a policy that publishes an update once the producer paused for the quiet period, or the maximum latency
+     * has passed since the first unpublished update.
+     *
+     * @param quietPeriodMillis as the amount of milliseconds without further update, before the latest update is
+     *                          published.
+     * @param maxLatencyMillis  as the maximum amount of milliseconds an update is withheld. Must not be shorter than
+     *                          the quiet period.
+     * @return the policy.
+     */
+    public static CoalescingPolicy debounce(long quietPeriodMillis, long maxLatencyMillis) {
+        return new CoalescingPolicy(0, quietPeriodMillis, maxLatencyMillis);
+    }
+
+    /**
+     * Creates a copy of this policy that additionally enforces a minimum interval between publications.
+     *
+     * @param minIntervalMillis as the minimum amount of milliseconds between two publications.
+     * @return the combined policy.
+     */
+    public CoalescingPolicy withMinInterval(long minIntervalMillis) {
+        return new CoalescingPolicy(minIntervalMillis, quietPeriodMillis, maxLatencyMillis);
+    }
+
+    /**
+     * Getter for the minimum interval between two publications.
+     *
+     * @return the interval in milliseconds, 0 if publications are not rate limited.
+     */
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    /**
+     * Getter for the debounce quiet period.
+     *
+     * @return the amount of milliseconds without further update before publication, 0 if updates are not debounced.
+     */
+    public long getQuietPeriodMillis() {
+        return quietPeriodMillis;
+    }
+
+    /**
+     * Getter for the maximum delay of a debounced update.
+     *
+     * @return the amount of milliseconds an update is withheld at most, 0 if updates are not debounced.
+     */
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+}
@@ -0,0 +1,104 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP content codings (see RFC 7231, Accept-Encoding) the library can apply to serialized content. Compressed bodies
+ * are computed once per content version and then shared by all clients that accept the same coding.
+ *
+ * @author Maximilian Schiedermeier
+ */
+enum ContentCoding {
+
+    // no compression, the plain UTF-8 serialization.
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    // zlib format, as mandated for the "deflate" coding by RFC 7230.
+    DEFLATE("deflate");
+
+    private final String token;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Returns the name of this coding, as used in the Content-Encoding header.
+     *
+     * @return the coding token.
+     */
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * Selects the preferred coding of a client, based on the quality values of its Accept-Encoding header. Gzip is
+     * preferred over deflate on equal quality. The wildcard applies to all codings not listed explicitly.
+     *
+     * @param acceptEncoding as the value of the Accept-Encoding request header. Can be null.
+     * @return the coding to apply, IDENTITY if the client accepts no supported compression.
+     */
+    static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty())
+            return IDENTITY;
+
+        float gzipQuality = -1;
+        float deflateQuality = -1;
+        float wildcardQuality = -1;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parameters = element.split(";");
+            String coding = parameters[0].trim().toLowerCase();
+            float quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip"))
+                gzipQuality = quality;
+            else if (coding.equals("deflate"))
+                deflateQuality = quality;
+            else if (coding.equals("*"))
+                wildcardQuality = quality;
+        }
+        if (gzipQuality < 0)
+            gzipQuality = wildcardQuality;
+        if (deflateQuality < 0)
+            deflateQuality = wildcardQuality;
+
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality)
+            return GZIP;
+        if (deflateQuality > 0)
+            return DEFLATE;
+        return IDENTITY;
+    }
+
+    /**
+     * Applies this coding to a serialization.
+     *
+     * @param serializedBytes as the UTF-8 encoded serialization.
+     * @return the encoded bytes. The provided array itself for IDENTITY.
+     */
+    byte[] encode(byte[] serializedBytes) {
+        if (this == IDENTITY)
+            return serializedBytes;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(serializedBytes.length / 2 + 32);
+        try (OutputStream encoder = this == GZIP ? new GZIPOutputStream(buffer) : new DeflaterOutputStream(buffer)) {
+            encoder.write(serializedBytes);
+        } catch (IOException e) {
+            // Never happens, the target is in memory.
+            throw new RuntimeException("Unable to compress serialized content.", e);
+        }
+        return buffer.toByteArray();
+    }
+}
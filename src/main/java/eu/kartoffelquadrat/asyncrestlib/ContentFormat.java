@@ -0,0 +1,76 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Additional serialization format of a BroadcastContentManager, e.g. CBOR or Smile, besides the JSON serialization.
+ * Serializations in additional formats are computed lazily, once per content version, and only serve as reply bodies.
+ * Hashes and versions are always derived from the JSON serialization, so they do not depend on the format requested by
+ * a client.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class ContentFormat {
+
+    private final MediaType mediaType;
+    private final ObjectWriter objectWriter;
+
+    /**
+     * @param mediaType    as the concrete media type of the format, e.g. application/cbor.
+     * @param objectWriter as the writer that produces the format, e.g. derived from an ObjectMapper with CBORFactory.
+     */
+    ContentFormat(MediaType mediaType, ObjectWriter objectWriter) {
+        this.mediaType = mediaType;
+        this.objectWriter = objectWriter;
+    }
+
+    MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Serializes the provided content into this format.
+     *
+     * @param content as the object to be serialized. Can be null.
+     * @return the serialization.
+     */
+    byte[] serialize(BroadcastContent content) {
+        try {
+            return objectWriter.writeValueAsBytes(content);
+        } catch (IOException jex) {
+            throw new RuntimeException("Unable to serialize provided BroadcastContent as " + mediaType + ": " +
+                    content);
+        }
+    }
+
+    /**
+     * Selects the format preferred by a client, based on its Accept header. JSON is always available and selected if
+     * the client accepts it at least as much as any additional format.
+     *
+     * @param accept  as the value of the Accept request header. Can be null, which accepts any format.
+     * @param formats as the additional formats of the manager.
+     * @return the selected additional format, null for JSON.
+     * @throws IllegalArgumentException if the client accepts neither JSON nor any of the additional formats.
+     */
+    static ContentFormat negotiate(String accept, List<ContentFormat> formats) {
+        if (accept == null || accept.trim().isEmpty())
+            return null;
+
+        List<MediaType> acceptedTypes = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            if (acceptedType.getQualityValue() <= 0)
+                continue;
+            if (acceptedType.includes(MediaType.APPLICATION_JSON))
+                return null;
+            for (ContentFormat format : formats)
+                if (acceptedType.includes(format.getMediaType()))
+                    return format;
+        }
+        throw new IllegalArgumentException("No acceptable format in: " + accept);
+    }
+}
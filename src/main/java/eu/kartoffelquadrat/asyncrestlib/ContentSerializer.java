@@ -0,0 +1,133 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Bundles the serialization and hashing rules of a BroadcastContentManager, that is the ObjectWriter and the hash
+ * algorithm, together with the metrics that time serialization, hashing and transformation. Immutable, a manager
+ * replaces its serializer when the rules change.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class ContentSerializer {
+
+    // serialization buffers above this size are not kept for reuse, so a single huge content does not pin memory.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+
+    // one reusable serialization buffer per thread.
+    private static final ThreadLocal<ReusableBuffer> buffers = ThreadLocal.withInitial(ReusableBuffer::new);
+
+    private final ObjectWriter objectWriter;
+    private final HashAlgorithm hashAlgorithm;
+    private final ManagerMetrics metrics;
+
+    ContentSerializer(ObjectWriter objectWriter, HashAlgorithm hashAlgorithm) {
+        this(objectWriter, hashAlgorithm, ManagerMetrics.NOOP);
+    }
+
+    private ContentSerializer(ObjectWriter objectWriter, HashAlgorithm hashAlgorithm, ManagerMetrics metrics) {
+        this.objectWriter = objectWriter;
+        this.hashAlgorithm = hashAlgorithm;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param hashAlgorithm as the hash algorithm of the new serializer.
+     * @return a serializer with the same rules and metrics, but another hash algorithm.
+     */
+    ContentSerializer withHashAlgorithm(HashAlgorithm hashAlgorithm) {
+        return new ContentSerializer(objectWriter, hashAlgorithm, metrics);
+    }
+
+    /**
+     * @param metrics as the metrics of the new serializer.
+     * @return a serializer with the same rules, reporting to other metrics.
+     */
+    ContentSerializer withMetrics(ManagerMetrics metrics) {
+        return new ContentSerializer(objectWriter, hashAlgorithm, metrics);
+    }
+
+    ObjectWriter getObjectWriter() {
+        return objectWriter;
+    }
+
+    HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    ManagerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Serializes the provided content to UTF-8 encoded JSON. The JSON is produced into a reusable per-thread buffer,
+     * the only allocation is the exact-size result array.
+     *
+     * @param content as the object to be serialized.
+     * @return the UTF-8 encoded JSON serialization.
+     */
+    byte[] serialize(BroadcastContent content) {
+        long startTime = metrics.startTimer();
+        ReusableBuffer buffer = buffers.get();
+        try {
+            objectWriter.writeValue(buffer, content);
+            byte[] serialized = buffer.toByteArray();
+            metrics.serialized(startTime);
+            return serialized;
+        } catch (IOException jex) {
+            throw new RuntimeException("Unable to serialize provided BroadcastContent: " + content);
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE)
+                buffers.remove();
+            else
+                buffer.reset();
+        }
+    }
+
+    /**
+     * Hashes the provided content, streaming its serialization directly into the hash function.
+     *
+     * @param content as the object to be hashed.
+     * @return the hex string of the content's hash.
+     */
+    String hash(BroadcastContent content) {
+        long startTime = metrics.startTimer();
+        String hash = BroadcastContentHasher.hash(objectWriter, content, hashAlgorithm);
+        metrics.hashed(startTime);
+        return hash;
+    }
+
+    /**
+     * Hashes an already serialized content.
+     *
+     * @param serializedContent as the UTF-8 encoded JSON serialization.
+     * @return the hex string of the serialization's hash.
+     */
+    String hash(byte[] serializedContent) {
+        long startTime = metrics.startTimer();
+        String hash = BroadcastContentHasher.hashSerialized(serializedContent, hashAlgorithm);
+        metrics.hashed(startTime);
+        return hash;
+    }
+
+    /**
+     * Byte array stream with access to its capacity. Closing is a no-op, for Jackson closes the target stream.
+     */
+    private static class ReusableBuffer extends ByteArrayOutputStream {
+
+        ReusableBuffer() {
+            super(8192);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable snapshot of the content maintained by a BroadcastContentManager, as captured by touch() or
+ * updateBroadcastContent(). Every snapshot carries a version number that is incremented on each change. The
+ * serialization and hash of the content are computed at most once per snapshot and shared by all waiters and
+ * synchronous checks, so the cost of a state change does not depend on the amount of subscribers. Likewise, transformed
+ * views are cached per transformer and tag, and merge patches per base version. As the caches belong to the snapshot,
+ * they are discarded as soon as the version moves on.
+ *
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @author Maximilian Schiedermeier
+ */
+class ContentSnapshot<C extends BroadcastContent> {
+
+    // view key of all identity transformers, which share the untransformed view.
+    private static final Object IDENTITY_VIEW = new Object();
+
+    private final long version;
+    private final ContentSerializer serializer;
+    private final SerializedContent<C> serializedContent;
+    // time the snapshot was captured, for delivery latency metrics. Only taken if the manager has metrics bound.
+    private final boolean hasPublicationTime;
+    private final long publicationTime;
+    // transformed views of this snapshot, computed once per distinct transformer / tag combination.
+    private final Map<TransformKey, SerializedContent<C>> transformedViews = new ConcurrentHashMap<>();
+    // merge patches leading to this snapshot, computed once per base version. Empty if no patch can be used.
+    private final Map<Long, Optional<String>> mergePatches = new ConcurrentHashMap<>();
+
+    /**
+     * @param version      as the version of the content, unique per BroadcastContentManager.
+     * @param serializer   as the serialization rules of the owning BroadcastContentManager.
+     * @param content      as the captured content.
+     */
+    ContentSnapshot(long version, ContentSerializer serializer, C content) {
+        this(version, serializer, new SerializedContent<>(serializer, content));
+    }
+
+    /**
+     * @param version           as the version of the content, unique per BroadcastContentManager.
+     * @param serializer        as the serialization rules of the owning BroadcastContentManager.
+     * @param serializedContent as the captured content, possibly with serialization and hash already computed.
+     */
+    ContentSnapshot(long version, ContentSerializer serializer, SerializedContent<C> serializedContent) {
+        this.version = version;
+        this.serializer = serializer;
+        this.serializedContent = serializedContent;
+        ManagerMetrics metrics = serializer.getMetrics();
+        this.hasPublicationTime = metrics != ManagerMetrics.NOOP;
+        this.publicationTime = metrics.startTimer();
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    C getContent() {
+        return serializedContent.getContent();
+    }
+
+    SerializedContent<C> getSerializedContent() {
+        return serializedContent;
+    }
+
+    /**
+     * @return false if the snapshot was captured before metrics were bound, then it carries no publication time.
+     */
+    boolean hasPublicationTime() {
+        return hasPublicationTime;
+    }
+
+    long getPublicationTime() {
+        return publicationTime;
+    }
+
+    /**
+     * Returns the connection specific view of this snapshot, that is the outcome of the provided transformer. The
+     * identity transformer directly returns the shared serialized content of this snapshot. Any other transformation
+     * is computed once per transformer and tag, then shared by all waiters with the same transformer and tag.
+     *
+     * @param transformer  as the transformation to apply.
+     * @param transformTag as the optional parameter for the transformer.
+     * @return the transformed content, wrapped with its serialization and hash.
+     */
+    SerializedContent<C> view(Transformer<C> transformer, String transformTag) {
+        if (transformer instanceof IdentityTransformer)
+            return serializedContent;
+        return transformedViews.computeIfAbsent(new TransformKey(transformer, transformTag), key -> {
+            long startTime = serializer.getMetrics().startTimer();
+            C transformed = transformer.transform(getContent(), transformTag);
+            serializer.getMetrics().transformed(startTime);
+            return new SerializedContent<>(serializer, transformed);
+        });
+    }
+
+    /**
+     * Returns a key that is equal for all transformer and tag combinations that share the same view, see view().
+     *
+     * @param transformer  as the transformation to apply.
+     * @param transformTag as the optional parameter for the transformer.
+     * @return the key of the view.
+     */
+    static Object viewKey(Transformer<?> transformer, String transformTag) {
+        if (transformer instanceof IdentityTransformer)
+            return IDENTITY_VIEW;
+        return new TransformKey(transformer, transformTag);
+    }
+
+    /**
+     * Returns the merge patch (RFC 7386) that turns the content of a previous snapshot into the content of this
+     * snapshot. The patch is computed once per base version, then shared by all clients holding that version.
+     *
+     * @param base as the snapshot held by the client.
+     * @return the serialized merge patch, or null if the content can not be patched or the patch is not smaller than
+     * the full serialization.
+     */
+    String mergePatchFrom(ContentSnapshot<C> base) {
+        return mergePatches.computeIfAbsent(base.getVersion(), baseVersion -> {
+            byte[] target = serializedContent.getSerializedBytes();
+            String patch = MergePatch.diff(base.getSerializedContent().getSerializedBytes(), target);
+            if (patch == null || patch.getBytes(StandardCharsets.UTF_8).length >= target.length)
+                return Optional.empty();
+            return Optional.of(patch);
+        }).orElse(null);
+    }
+
+    /**
+     * Cache key for transformed views, likewise used to group listeners by view. Transformers are compared by equals,
+     * which defaults to identity.
+     */
+    private static class TransformKey {
+
+        private final Transformer<?> transformer;
+        private final String transformTag;
+
+        TransformKey(Transformer<?> transformer, String transformTag) {
+            this.transformer = transformer;
+            this.transformTag = transformTag;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+            if (!(other instanceof TransformKey))
+                return false;
+            TransformKey otherKey = (TransformKey) other;
+            return transformer.equals(otherKey.transformer) && Objects.equals(transformTag, otherKey.transformTag);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * transformer.hashCode() + Objects.hashCode(transformTag);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holder for the small, bounded thread pool that is shared by all event-driven BroadcastContentManagers which were not
+ * provided a custom dispatcher. The pool is only created on first access. Threads are daemons, so an unused pool never
+ * prevents the JVM from shutting down.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class DefaultDispatcher {
+
+    static final ExecutorService POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            new DispatcherThreadFactory("arl-dispatcher-"));
+
+    private DefaultDispatcher() {
+    }
+
+    /**
+     * Creates named daemon threads for the default dispatcher pool and other library internal executors.
+     */
+    static class DispatcherThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        /**
+         * @param namePrefix as the prefix of all thread names, followed by a counter.
+         */
+        DispatcherThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Holder for the single timer thread that is shared by all BroadcastContentManagers, e.g. to publish coalesced updates
+ * once their window closes. Scheduled tasks must be short, the actual notification of subscribers is handed to the
+ * dispatcher. The thread is only created on first access and is a daemon.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class DefaultScheduler {
+
+    static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            new DefaultDispatcher.DispatcherThreadFactory("arl-timer-"));
+
+    private DefaultScheduler() {
+    }
+}
@@ -0,0 +1,106 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+/**
+ * Limits the rate at which a BroadcastContentManager releases its registered waiters on a content change. Without
+ * pacer, an update to a very large amount of waiters results in a burst of full-state replies, which can saturate the
+ * network interface and downstream proxies. A pacer instead evaluates the waiters in waves, one wave per interval,
+ * so the replies of a single update are spread over time. Rates are either given in replies or in bytes per second.
+ * Byte rates are converted into an amount of replies per wave, based on the serialized size of the published content.
+ * <p>
+ * Each evaluation of a waiter is based on the state at evaluation time, so a waiter released by a late wave directly
+ * receives the latest state. If the content changes again while waves are pending, the remaining waves are dropped.
+ * The waiters they would have released are first in line for the waves of the new update, so frequent updates do not
+ * starve them. Instances are immutable.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public final class DeliveryPacer {
+
+    private static final long DEFAULT_WAVE_INTERVAL = 10;
+
+    private final long rate;
+    private final boolean byteRate;
+    private final long waveInterval;
+
+    private DeliveryPacer(long rate, boolean byteRate, long waveInterval) {
+        if (rate < 1)
+            throw new IllegalArgumentException("Delivery rate must be positive.");
+        if (waveInterval < 1)
+            throw new IllegalArgumentException("Wave interval must be positive.");
+        this.rate = rate;
+        this.byteRate = byteRate;
+        this.waveInterval = waveInterval;
+    }
+
+    /**
+     * Creates a pacer that releases at most the provided amount of replies per second.
+     *
+     * @param repliesPerSecond as the maximum reply rate of a single update.
+     * @return the pacer, releasing a wave every 10 milliseconds.
+     */
+    public static DeliveryPacer repliesPerSecond(long repliesPerSecond) {
+        return new DeliveryPacer(repliesPerSecond, false, DEFAULT_WAVE_INTERVAL);
+    }
+
+    /**
+     * Creates a pacer that releases replies of at most the provided size per second. The size of a reply is estimated
+     * by the size of the serialized content, so transformed views and deltas are estimated at full size.
+     *
+     * @param bytesPerSecond as the maximum byte rate of the replies of a single update.
+     * @return the pacer, releasing a wave every 10 milliseconds.
+     */
+    public static DeliveryPacer bytesPerSecond(long bytesPerSecond) {
+        return new DeliveryPacer(bytesPerSecond, true, DEFAULT_WAVE_INTERVAL);
+    }
+
+    /**
+     * Creates a copy of this pacer with a different interval between two waves. Shorter intervals result in smaller,
+     * more frequent waves.
+     *
+     * @param waveIntervalMillis as the time between two waves, in milliseconds.
+     * @return the pacer with the same rate.
+     */
+    public DeliveryPacer withWaveInterval(long waveIntervalMillis) {
+        return new DeliveryPacer(rate, byteRate, waveIntervalMillis);
+    }
+
+    /**
+     * Getter for the configured rate.
+     *
+     * @return the rate, in bytes per second if isByteRate, otherwise in replies per second.
+     */
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * Tells whether the rate is measured in bytes or in replies.
+     *
+     * @return true if the rate is in bytes per second, false if in replies per second.
+     */
+    public boolean isByteRate() {
+        return byteRate;
+    }
+
+    /**
+     * Getter for the time between two waves.
+     *
+     * @return the wave interval, in milliseconds.
+     */
+    public long getWaveInterval() {
+        return waveInterval;
+    }
+
+    /**
+     * Determines the amount of waiters released per wave.
+     *
+     * @param replySize as the estimated size of a single reply, in bytes. Only relevant for byte rates.
+     * @return the wave size, at least 1.
+     */
+    int waveSize(int replySize) {
+        double budgetPerWave = rate * waveInterval / 1000.0;
+        if (byteRate)
+            budgetPerWave /= Math.max(1, replySize);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetPerWave));
+    }
+}
@@ -0,0 +1,103 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes how a BroadcastContentManager evaluates its registered waiters on a content change. By default all waiters
+ * are evaluated one after another by a single dispatcher task. A parallel policy instead splits the waiters into
+ * chunks that are evaluated concurrently by the dispatcher threads, so completing a very large amount of requests is
+ * spread across cores. Waiters that observe the same transformed view (same transformer and tag) are placed into the
+ * same chunks, so each chunk only touches few distinct views.
+ * <p>
+ * The updating thread never evaluates more waiters than the inline limit: smaller fan-outs are evaluated right away,
+ * which saves the hand-off to the dispatcher, larger ones are entirely handed to the dispatcher. Instances are
+ * immutable.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public final class FanOutPolicy {
+
+    private final int chunkSize;
+    private final int inlineLimit;
+
+    private FanOutPolicy(int chunkSize, int inlineLimit) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        if (inlineLimit < 0)
+            throw new IllegalArgumentException("Inline limit must not be negative.");
+        this.chunkSize = chunkSize;
+        this.inlineLimit = inlineLimit;
+    }
+
+    /**
+     * Creates a policy that evaluates waiters in parallel chunks. No waiter is evaluated by the updating thread.
+     *
+     * @param chunkSize as the maximum amount of waiters evaluated by one dispatcher task.
+     * @return the policy.
+     */
+    public static FanOutPolicy parallel(int chunkSize) {
+        return new FanOutPolicy(chunkSize, 0);
+    }
+
+    /**
+     * Creates a copy of this policy that lets the updating thread evaluate small fan-outs itself.
+     *
+     * @param inlineLimit as the maximum amount of registered waiters that are evaluated by the updating thread.
+     *                    Fan-outs to more waiters are handed to the dispatcher. 0 hands every fan-out to the
+     *                    dispatcher.
+     * @return the combined policy.
+     */
+    public FanOutPolicy withInlineLimit(int inlineLimit) {
+        return new FanOutPolicy(chunkSize, inlineLimit);
+    }
+
+    /**
+     * Getter for the chunk size.
+     *
+     * @return the maximum amount of waiters evaluated by one dispatcher task.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Getter for the inline limit.
+     *
+     * @return the maximum amount of registered waiters evaluated by the updating thread, 0 if none.
+     */
+    public int getInlineLimit() {
+        return inlineLimit;
+    }
+
+    /**
+     * Splits waiters into chunks of at most the chunk size. Waiters are grouped by view key first, then the groups fill
+     * up the chunks one after another, so a chunk only spans the few groups that fit into it.
+     *
+     * @param waiters as the waiters to evaluate.
+     * @return the chunks, none of them empty.
+     */
+    List<List<UpdateListener>> partition(List<UpdateListener> waiters) {
+        Map<Object, List<UpdateListener>> groups = new LinkedHashMap<>();
+        for (UpdateListener waiter : waiters)
+            groups.computeIfAbsent(waiter.getViewKey(), key -> new ArrayList<>()).add(waiter);
+
+        int capacity = Math.max(1, Math.min(chunkSize, waiters.size()));
+        List<List<UpdateListener>> chunks = new ArrayList<>(waiters.size() / capacity + 1);
+        List<UpdateListener> chunk = new ArrayList<>(capacity);
+        for (List<UpdateListener> group : groups.values()) {
+            for (UpdateListener waiter : group) {
+                if (chunk.size() == chunkSize) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>(capacity);
+                }
+                chunk.add(waiter);
+            }
+        }
+        if (!chunk.isEmpty())
+            chunks.add(chunk);
+        return chunks;
+    }
+}
@@ -0,0 +1,40 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.function.Supplier;
+
+/**
+ * Hash functions available for content hashes. Hashes are always computed on the UTF-8 encoded JSON serialization of
+ * a BroadcastContent. Clients that use hash-based updates must compute their hashes with the same algorithm as the
+ * BroadcastContentManager.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public enum HashAlgorithm {
+
+    /**
+     * MD5, 32 hex characters. Default, for compatibility with existing clients.
+     */
+    MD5(Md5HashingOutputStream::new),
+
+    /**
+     * 128 bit MurmurHash3 (x64 variant, seed 0), 32 hex characters. Not cryptographic, but considerably faster.
+     */
+    MURMUR3_128(Murmur3HashingOutputStream::new);
+
+    // one reusable hashing stream per thread, so hashing does not allocate per call.
+    private final ThreadLocal<HashingOutputStream> hashingStreams;
+
+    HashAlgorithm(Supplier<HashingOutputStream> streamFactory) {
+        hashingStreams = ThreadLocal.withInitial(streamFactory);
+    }
+
+    /**
+     * Returns the reusable hashing stream of the calling thread. The stream must be completed with hexDigest() or
+     * reset() before the next use.
+     *
+     * @return a hashing stream exclusive to the calling thread.
+     */
+    HashingOutputStream threadLocalStream() {
+        return hashingStreams.get();
+    }
+}
@@ -0,0 +1,40 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.io.OutputStream;
+
+/**
+ * OutputStream that does not store any of the written bytes, but feeds them into a hash function. Used to hash the
+ * JSON output of the Jackson generator directly, without materializing the serialization as String or byte array.
+ * Instances are reused per thread, see HashAlgorithm.
+ *
+ * @author Maximilian Schiedermeier
+ */
+abstract class HashingOutputStream extends OutputStream {
+
+    // Redeclared without IOException, feeding a hash function can not fail.
+    @Override
+    public abstract void write(int b);
+
+    @Override
+    public abstract void write(byte[] bytes, int offset, int length);
+
+    /**
+     * Completes the hash computation for all bytes written since the last reset and resets the stream, so it can be
+     * reused for the next hash.
+     *
+     * @return the hash as lower case hex string.
+     */
+    abstract String hexDigest();
+
+    /**
+     * Discards all bytes written so far, e.g. after a failed serialization.
+     */
+    abstract void reset();
+
+    /**
+     * Closing is a no-op, for Jackson closes the target stream after serialization and the instance is reused.
+     */
+    @Override
+    public void close() {
+    }
+}
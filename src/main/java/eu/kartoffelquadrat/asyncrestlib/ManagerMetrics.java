@@ -0,0 +1,103 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+/**
+ * Receives measurements of a BroadcastContentManager and the requests it serves. Timings are taken by passing the
+ * value of startTimer() back to the respective method. The default implementations do nothing, and startTimer() does
+ * not even read the clock, so a manager without bound metrics (NOOP) has no measurement overhead.
+ *
+ * @author Maximilian Schiedermeier
+ */
+interface ManagerMetrics {
+
+    /**
+     * Discards all measurements. Default of every manager.
+     */
+    ManagerMetrics NOOP = new ManagerMetrics() {
+    };
+
+    /**
+     * Starts a timing.
+     *
+     * @return the start time, to be passed to one of the timing methods.
+     */
+    default long startTimer() {
+        return 0;
+    }
+
+    /**
+     * A request was answered with content, either synchronously or after waiting for an update.
+     *
+     * @param deferred as whether the request had to wait for an update.
+     */
+    default void replied(boolean deferred) {
+    }
+
+    /**
+     * A pending request timed out without update (408).
+     */
+    default void timedOut() {
+    }
+
+    /**
+     * A request that would have had to wait was rejected with 503, because the manager or the node is saturated.
+     */
+    default void rejected() {
+    }
+
+    /**
+     * A request was answered because the manager is terminated.
+     *
+     * @param status as the HTTP status of the reply, 204 for pending requests and 410 for new requests.
+     */
+    default void terminated(int status) {
+    }
+
+    /**
+     * All registered waiters were evaluated after a content change.
+     *
+     * @param startTime as the time the evaluation started.
+     */
+    default void fannedOut(long startTime) {
+    }
+
+    /**
+     * All waves of a paced fan-out were evaluated, or the remaining waves were dropped for a later update.
+     *
+     * @param startTime as the time the first wave started.
+     */
+    default void deliverySpread(long startTime) {
+    }
+
+    /**
+     * A content version was delivered to a waiting client. Not reported for versions published before metrics were
+     * bound, as those carry no publication time.
+     *
+     * @param publicationTime as the time the version was published.
+     */
+    default void delivered(long publicationTime) {
+    }
+
+    /**
+     * A content was serialized.
+     *
+     * @param startTime as the time the serialization started.
+     */
+    default void serialized(long startTime) {
+    }
+
+    /**
+     * A serialization was hashed.
+     *
+     * @param startTime as the time the hashing started.
+     */
+    default void hashed(long startTime) {
+    }
+
+    /**
+     * A content was transformed.
+     *
+     * @param startTime as the time the transformation started.
+     */
+    default void transformed(long startTime) {
+    }
+}
@@ -0,0 +1,37 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.security.MessageDigest;
+
+/**
+ * Streaming MD5 hash. Produces the same result as DigestUtils.md5Hex on the UTF-8 encoded JSON string.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class Md5HashingOutputStream extends HashingOutputStream {
+
+    private final MessageDigest messageDigest = DigestUtils.getMd5Digest();
+
+    @Override
+    public void write(int b) {
+        messageDigest.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        messageDigest.update(bytes, offset, length);
+    }
+
+    @Override
+    String hexDigest() {
+        // digest() implicitly resets the message digest
+        return Hex.encodeHexString(messageDigest.digest());
+    }
+
+    @Override
+    void reset() {
+        messageDigest.reset();
+    }
+}
@@ -0,0 +1,110 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Computes JSON merge patches (RFC 7386) between two JSON serializations. Applying the patch to the source document,
+ * as described in the RFC, yields the target document. Merge patches can not express null values inside objects, for
+ * null marks the removal of a member. Such targets are therefore reported as not patchable.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class MergePatch {
+
+    /**
+     * Media type of JSON merge patches, as defined by RFC 7386.
+     */
+    static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    // only used to parse and print json trees. The serialization rules of the content do not matter at this point.
+    private static final ObjectMapper TREE_MAPPER = new ObjectMapper();
+
+    private MergePatch() {
+    }
+
+    /**
+     * Computes the merge patch that turns the source document into the target document.
+     *
+     * @param source as the UTF-8 encoded json serialization of the document the client holds.
+     * @param target as the UTF-8 encoded json serialization of the document the client should end up with.
+     * @return the serialized merge patch, or null if the target can not be reached by a merge patch.
+     */
+    static String diff(byte[] source, byte[] target) {
+        try {
+            JsonNode patch = diff(TREE_MAPPER.readTree(source), TREE_MAPPER.readTree(target));
+            if (patch == null)
+                return null;
+            return TREE_MAPPER.writeValueAsString(patch);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to compute merge patch: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Recursive diff of two json trees. Objects are diffed member by member, any other value is replaced as a whole.
+     *
+     * @return the patch, or null if the target can not be reached by a merge patch.
+     */
+    private static JsonNode diff(JsonNode source, JsonNode target) {
+        if (!source.isObject() || !target.isObject())
+            return replacement(target);
+
+        ObjectNode patch = JsonNodeFactory.instance.objectNode();
+
+        // Members missing in the target are removed by null.
+        Iterator<String> sourceFields = source.fieldNames();
+        while (sourceFields.hasNext()) {
+            String field = sourceFields.next();
+            if (!target.has(field))
+                patch.putNull(field);
+        }
+
+        // Members that are new or changed in the target are patched recursively.
+        Iterator<Map.Entry<String, JsonNode>> targetFields = target.fields();
+        while (targetFields.hasNext()) {
+            Map.Entry<String, JsonNode> field = targetFields.next();
+            JsonNode sourceValue = source.get(field.getKey());
+            if (field.getValue().equals(sourceValue))
+                continue;
+            JsonNode fieldPatch = sourceValue == null ? replacement(field.getValue()) : diff(sourceValue,
+                    field.getValue());
+            if (fieldPatch == null)
+                return null;
+            patch.set(field.getKey(), fieldPatch);
+        }
+        return patch;
+    }
+
+    /**
+     * Returns the provided value as patch that replaces the previous value. A replacing object is itself applied as
+     * merge patch, so it must not contain null members.
+     *
+     * @return the value, or null if it can not be expressed as merge patch.
+     */
+    private static JsonNode replacement(JsonNode value) {
+        if (value.isNull() || containsNullMember(value))
+            return null;
+        return value;
+    }
+
+    /**
+     * Tells whether an object, or any nested object, has a member with null value. Arrays are replaced literally, so
+     * their elements are not inspected.
+     */
+    private static boolean containsNullMember(JsonNode value) {
+        if (!value.isObject())
+            return false;
+        for (JsonNode member : value) {
+            if (member.isNull() || containsNullMember(member))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the measurements of a BroadcastContentManager to a Micrometer registry. All meters are tagged with the
+ * name of the manager:
+ * <ul>
+ * <li>arl.waiters.active (gauge): pending requests.</li>
+ * <li>arl.replies (counter, tag reply=immediate|deferred): requests answered with content, right away or after
+ * waiting for an update.</li>
+ * <li>arl.timeouts (counter): requests answered with 408.</li>
+ * <li>arl.rejections (counter): requests answered with 503 by admission control.</li>
+ * <li>arl.terminations (counter, tag status=204|410): requests answered because the manager is terminated.</li>
+ * <li>arl.fanout (timer): evaluation of all registered waiters after a content change.</li>
+ * <li>arl.delivery.spread (timer): from the first to the last wave of a paced fan-out, see DeliveryPacer.</li>
+ * <li>arl.delivery.latency (timer): from the publication of a version to its delivery to a waiting client.</li>
+ * <li>arl.serialization, arl.hash, arl.transform (timers): cost of serializing, hashing and transforming content.</li>
+ * </ul>
+ * Requires micrometer-core on the classpath. Managers that are not bound do not measure anything.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public class MicrometerMetrics implements ManagerMetrics {
+
+    private final Counter immediateReplies;
+    private final Counter deferredReplies;
+    private final Counter timeouts;
+    private final Counter rejections;
+    private final Counter terminationsPending;
+    private final Counter terminationsGone;
+    private final Timer fanOut;
+    private final Timer deliverySpread;
+    private final Timer deliveryLatency;
+    private final Timer serialization;
+    private final Timer hashing;
+    private final Timer transformation;
+
+    private MicrometerMetrics(MeterRegistry registry, Tags tags) {
+        immediateReplies = registry.counter("arl.replies", tags.and("reply", "immediate"));
+        deferredReplies = registry.counter("arl.replies", tags.and("reply", "deferred"));
+        timeouts = registry.counter("arl.timeouts", tags);
+        rejections = registry.counter("arl.rejections", tags);
+        terminationsPending = registry.counter("arl.terminations", tags.and("status", "204"));
+        terminationsGone = registry.counter("arl.terminations", tags.and("status", "410"));
+        fanOut = registry.timer("arl.fanout", tags);
+        deliverySpread = registry.timer("arl.delivery.spread", tags);
+        deliveryLatency = registry.timer("arl.delivery.latency", tags);
+        serialization = registry.timer("arl.serialization", tags);
+        hashing = registry.timer("arl.hash", tags);
+        transformation = registry.timer("arl.transform", tags);
+    }
+
+    /**
+     * Starts publishing the measurements of a manager. Content versions published before binding are not measured.
+     * The name should be unique per manager, for the amount of pending requests is only reported for the first manager
+     * bound with a name. Managers that are created per resource (see BroadcastContentManagerRegistry) should rather
+     * share a name per kind of resource, to keep the amount of meters bounded.
+     *
+     * @param broadcastContentManager as the manager to observe.
+     * @param registry                as the registry to publish to.
+     * @param name                    as the value of the "manager" tag of all meters.
+     */
+    public static void bind(BroadcastContentManager<?> broadcastContentManager, MeterRegistry registry, String name) {
+        Tags tags = Tags.of("manager", name);
+        Gauge.builder("arl.waiters.active", broadcastContentManager, BroadcastContentManager::getPendingWaiterCount)
+                .tags(tags).register(registry);
+        broadcastContentManager.setMetrics(new MicrometerMetrics(registry, tags));
+    }
+
+    @Override
+    public long startTimer() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void replied(boolean deferred) {
+        (deferred ? deferredReplies : immediateReplies).increment();
+    }
+
+    @Override
+    public void timedOut() {
+        timeouts.increment();
+    }
+
+    @Override
+    public void rejected() {
+        rejections.increment();
+    }
+
+    @Override
+    public void terminated(int status) {
+        (status == 410 ? terminationsGone : terminationsPending).increment();
+    }
+
+    @Override
+    public void fannedOut(long startTime) {
+        record(fanOut, startTime);
+    }
+
+    @Override
+    public void deliverySpread(long startTime) {
+        record(deliverySpread, startTime);
+    }
+
+    @Override
+    public void delivered(long publicationTime) {
+        record(deliveryLatency, publicationTime);
+    }
+
+    @Override
+    public void serialized(long startTime) {
+        record(serialization, startTime);
+    }
+
+    @Override
+    public void hashed(long startTime) {
+        record(hashing, startTime);
+    }
+
+    @Override
+    public void transformed(long startTime) {
+        record(transformation, startTime);
+    }
+
+    private static void record(Timer timer, long startTime) {
+        timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,147 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Represents a single pending long-poll request that observes multiple BroadcastContentManagers at once. The waiter is
+ * registered at every observed manager, but it is a single object, so the server side cost of a pending request does
+ * not grow with a connection per resource. As soon as at least one resource is relevant to the client, the deferred
+ * reply is completed with a json object that holds an entry for every relevant resource, keyed by resource id:
+ * <pre>{"id": {"version": 7, "hash": "...", "content": {...}}, "other": {"terminated": true}}</pre>
+ * The hash is only listed for hash based requests. Terminated resources are always relevant and listed as terminated.
+ * <p>
+ * Towards the global limit of AdmissionControl the waiter counts as a single pending request, while every observed
+ * manager counts it towards its own limit.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class MultiplexWaiter implements UpdateListener {
+
+    // only used to assemble the combined body. Contents are embedded with their shared serializations, as raw json.
+    private static final ObjectMapper BODY_MAPPER = new ObjectMapper();
+
+    private final Map<String, ? extends BroadcastContentManager<?>> broadcastContentManagers;
+    private final Map<String, String> clientContentHashes;
+    private final Map<String, Long> clientContentVersions;
+    private final DeferredResult<ResponseEntity<String>> deferredResult;
+    // whether this waiter is counted as pending request by AdmissionControl
+    private final AtomicBoolean registered = new AtomicBoolean();
+
+    private MultiplexWaiter(Map<String, ? extends BroadcastContentManager<?>> broadcastContentManagers,
+                            Map<String, String> clientContentHashes, Map<String, Long> clientContentVersions,
+                            DeferredResult<ResponseEntity<String>> deferredResult) {
+        this.broadcastContentManagers = broadcastContentManagers;
+        this.clientContentHashes = clientContentHashes;
+        this.clientContentVersions = clientContentVersions;
+        this.deferredResult = deferredResult;
+    }
+
+    /**
+     * Creates a waiter for a client that provided the hash of each resource it holds. A resource is relevant if its
+     * content is not empty and differs in hash. Resources without client hash are relevant right away.
+     */
+    static MultiplexWaiter forHashes(Map<String, ? extends BroadcastContentManager<?>> broadcastContentManagers,
+                                     Map<String, String> clientContentHashes,
+                                     DeferredResult<ResponseEntity<String>> result) {
+        return new MultiplexWaiter(broadcastContentManagers, clientContentHashes, null, result);
+    }
+
+    /**
+     * Creates a waiter for a client that provided the version of each resource it holds. A resource is relevant if its
+     * version is newer than the client version. Resources without client version are relevant right away.
+     */
+    static MultiplexWaiter forVersions(Map<String, ? extends BroadcastContentManager<?>> broadcastContentManagers,
+                                       Map<String, Long> clientContentVersions,
+                                       DeferredResult<ResponseEntity<String>> result) {
+        return new MultiplexWaiter(broadcastContentManagers, null, clientContentVersions, result);
+    }
+
+    /**
+     * Registers this waiter at all observed managers. Must be followed by an evaluation, for updates might have
+     * occurred before the registration completed.
+     */
+    void register() {
+        if (registered.compareAndSet(false, true))
+            AdmissionControl.waiterAdded();
+        for (BroadcastContentManager<?> broadcastContentManager : broadcastContentManagers.values())
+            broadcastContentManager.addWaiter(this);
+    }
+
+    /**
+     * Removes this waiter from all observed managers.
+     */
+    void unregister() {
+        for (BroadcastContentManager<?> broadcastContentManager : broadcastContentManagers.values())
+            broadcastContentManager.removeWaiter(this);
+        if (registered.compareAndSet(true, false))
+            AdmissionControl.waiterRemoved();
+    }
+
+    @Override
+    public boolean isCountedByManager() {
+        return false;
+    }
+
+    /**
+     * Evaluates the current state of all observed managers. Completes the deferred result if at least one resource is
+     * relevant. Synchronized, for the waiter may be evaluated by the dispatchers of multiple managers at once.
+     *
+     * @return true if this waiter is done (result set or already expired), false if it has to keep waiting.
+     */
+    @Override
+    public synchronized boolean notifyUpdate() {
+        if (deferredResult.isSetOrExpired()) {
+            unregister();
+            return true;
+        }
+
+        ObjectNode body = BODY_MAPPER.createObjectNode();
+        for (Map.Entry<String, ? extends BroadcastContentManager<?>> resource : broadcastContentManagers.entrySet())
+            addIfRelevant(body, resource.getKey(), resource.getValue());
+        if (body.size() == 0)
+            return false;
+
+        try {
+            deferredResult.setResult(ResponseGenerator.withRepollHint(ResponseEntity.ok(),
+                    broadcastContentManagers.values()).body(BODY_MAPPER.writeValueAsString(body)));
+        } catch (JsonProcessingException jex) {
+            throw new RuntimeException("Unable to assemble multiplexed update: " + jex.getMessage());
+        }
+        unregister();
+        return true;
+    }
+
+    /**
+     * Adds an entry for the provided resource to the body, if it is relevant to the client.
+     */
+    private void addIfRelevant(ObjectNode body, String resourceId, BroadcastContentManager<?> broadcastContentManager) {
+        if (broadcastContentManager.isTerminated()) {
+            body.putObject(resourceId).put("terminated", true);
+            return;
+        }
+
+        ContentSnapshot<?> snapshot = broadcastContentManager.getCurrentSnapshot();
+        SerializedContent<?> content = snapshot.getSerializedContent();
+        if (clientContentVersions != null) {
+            Long clientContentVersion = clientContentVersions.get(resourceId);
+            // A client version above the current one stems from an earlier manager of the resource.
+            if (clientContentVersion != null && snapshot.getVersion() == clientContentVersion)
+                return;
+        } else if (content.isEmpty() || content.getHash().equals(clientContentHashes.get(resourceId)))
+            return;
+
+        ObjectNode entry = body.putObject(resourceId);
+        entry.put("version", snapshot.getVersion());
+        if (clientContentHashes != null)
+            entry.put("hash", content.getHash());
+        entry.putRawValue("content", new RawValue(content.getSerialized()));
+    }
+}
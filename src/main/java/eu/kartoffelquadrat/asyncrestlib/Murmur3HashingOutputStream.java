@@ -0,0 +1,145 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Streaming implementation of the 128 bit, x64 variant of MurmurHash3 (seed 0). Murmur3 is not a cryptographic hash,
+ * but considerably faster than MD5 and sufficient to detect content changes. The hex output lists the little-endian
+ * bytes of both 64 bit halves, as common for this hash (e.g. Guava's murmur3_128).
+ *
+ * @author Maximilian Schiedermeier
+ */
+class Murmur3HashingOutputStream extends HashingOutputStream {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    // buffers the bytes of an incomplete 16 byte block
+    private final byte[] tail = new byte[16];
+    private int tailLength;
+    private long totalLength;
+    private long h1;
+    private long h2;
+
+    @Override
+    public void write(int b) {
+        tail[tailLength++] = (byte) b;
+        totalLength++;
+        if (tailLength == 16) {
+            processBlock(tail, 0);
+            tailLength = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+
+        // complete a previously started block
+        if (tailLength > 0) {
+            int missing = Math.min(16 - tailLength, length);
+            System.arraycopy(bytes, offset, tail, tailLength, missing);
+            tailLength += missing;
+            offset += missing;
+            if (tailLength < 16)
+                return;
+            processBlock(tail, 0);
+            tailLength = 0;
+        }
+
+        // process full blocks directly from the input
+        while (end - offset >= 16) {
+            processBlock(bytes, offset);
+            offset += 16;
+        }
+
+        // keep the remainder for the next write
+        tailLength = end - offset;
+        System.arraycopy(bytes, offset, tail, 0, tailLength);
+    }
+
+    @Override
+    String hexDigest() {
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = tailLength - 1; i >= 8; i--)
+            k2 = (k2 << 8) | (tail[i] & 0xffL);
+        for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--)
+            k1 = (k1 << 8) | (tail[i] & 0xffL);
+        if (tailLength > 8) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+        }
+        if (tailLength > 0) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+
+        h1 ^= totalLength;
+        h2 ^= totalLength;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+
+        byte[] digest = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            digest[i] = (byte) (h1 >>> (8 * i));
+            digest[i + 8] = (byte) (h2 >>> (8 * i));
+        }
+        reset();
+        return Hex.encodeHexString(digest);
+    }
+
+    @Override
+    void reset() {
+        tailLength = 0;
+        totalLength = 0;
+        h1 = 0;
+        h2 = 0;
+    }
+
+    private void processBlock(byte[] bytes, int offset) {
+        long k1 = readLongLittleEndian(bytes, offset);
+        long k2 = readLongLittleEndian(bytes, offset + 8);
+
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long readLongLittleEndian(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = 7; i >= 0; i--)
+            result = (result << 8) | (bytes[offset + i] & 0xffL);
+        return result;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
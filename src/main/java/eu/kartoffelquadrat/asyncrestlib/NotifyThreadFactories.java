@@ -0,0 +1,25 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the default factory for the threads that run AsyncNotifyTask wait loops. This is the Java 8 variant that
+ * creates ordinary platform threads. The library jar is a multi-release jar, on Java 21+ runtimes this class is
+ * replaced by a variant that creates virtual threads (see src/main/java21).
+ *
+ * @author Maximilian Schiedermeier
+ */
+class NotifyThreadFactories {
+
+    private NotifyThreadFactories() {
+    }
+
+    /**
+     * Returns the runtime specific default thread factory.
+     *
+     * @return a factory that creates one platform thread per pending request.
+     */
+    static ThreadFactory defaultFactory() {
+        return Thread::new;
+    }
+}
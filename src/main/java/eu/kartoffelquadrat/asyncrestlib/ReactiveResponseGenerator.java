@@ -0,0 +1,229 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.context.request.async.DeferredResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Reactive counterpart of the ResponseGenerator, e.g. for WebFlux controllers. Long-polls are provided as Mono, streams
+ * as Flux of server-sent events. Both are driven by the change signals of the BroadcastContentManager: pending
+ * subscribers are registered at the manager and evaluated by its dispatcher, no thread is blocked while waiting. This
+ * also applies to managers without event-driven notification, so the same BroadcastContentManager can serve servlet
+ * and reactive controllers side by side. Return codes and semantics are the same as for the ResponseGenerator. Requires
+ * reactor-core on the classpath.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public class ReactiveResponseGenerator {
+
+    /**
+     * Reactive variant of ResponseGenerator.getAsyncUpdate. The Mono emits once a status change appears on server
+     * side (200), the timeout occurs (408) or the manager is terminated (204). Managers that are already terminated
+     * result in a 410.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is emitted.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a Mono that emits the reply, once subscribed.
+     */
+    public static <C extends BroadcastContent> Mono<ResponseEntity<String>> getAsyncUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager) {
+
+        // Only versions resulting from a status change after the subscription are relevant.
+        return awaitRelevantUpdate(longPollTimeout, broadcastContentManager,
+                result -> UpdateWaiter.forNextUpdate(broadcastContentManager,
+                        broadcastContentManager.getContentVersion(), new IdentityTransformer<>(), null,
+                        ReplyBody.STRING, result));
+    }
+
+    /**
+     * Reactive variant of ResponseGenerator.getHashBasedUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is emitted.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the BroadcastContent held by the client. Must not be null. If it differs
+     *                                from the current content, the current content is emitted right away.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a Mono that emits the reply, once subscribed.
+     */
+    public static <C extends BroadcastContent> Mono<ResponseEntity<String>> getHashBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash) {
+
+        return getTransformedUpdate(longPollTimeout, broadcastContentManager, broadcastContentHash,
+                new IdentityTransformer<>(), null);
+    }
+
+    /**
+     * Reactive variant of ResponseGenerator.getTransformedUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is emitted.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the transformed BroadcastContent held by the client. Must not be null.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be returned to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a Mono that emits the reply, once subscribed.
+     */
+    public static <C extends BroadcastContent> Mono<ResponseEntity<String>> getTransformedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, Transformer<C> transformer, String transformTag) {
+        if (broadcastContentHash == null)
+            throw new NullPointerException("BroadcastContentHash is null. Use getAsyncUpdate(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
+
+        return awaitRelevantUpdate(longPollTimeout, broadcastContentManager,
+                result -> UpdateWaiter.forHash(broadcastContentManager, broadcastContentHash, transformer,
+                        transformTag, ReplyBody.STRING, result));
+    }
+
+    /**
+     * Reactive variant of ResponseGenerator.getVersionBasedUpdate.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is emitted.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a Mono that emits the reply, once subscribed.
+     */
+    public static <C extends BroadcastContent> Mono<ResponseEntity<String>> getVersionBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion) {
+
+        return awaitRelevantUpdate(longPollTimeout, broadcastContentManager,
+                result -> UpdateWaiter.forVersion(broadcastContentManager, clientContentVersion,
+                        new IdentityTransformer<>(), null, ReplyBody.STRING, result));
+    }
+
+    /**
+     * Reactive variant of ResponseGenerator.getSseUpdates. The Flux emits every future status change as server-sent
+     * event, with the content version as id. It completes once the manager is terminated and releases its registration
+     * as soon as the subscriber cancels, e.g. on client disconnect. If the subscriber can not keep up, only the latest
+     * state is kept.
+     *
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a Flux of server-sent events, each carrying a json serialization of the content.
+     */
+    public static <C extends BroadcastContent> Flux<ServerSentEvent<String>> getUpdateStream(BroadcastContentManager<C> broadcastContentManager) {
+
+        return streamUpdates(broadcastContentManager, null, new IdentityTransformer<>(), null);
+    }
+
+    /**
+     * Reactive variant of ResponseGenerator.getTransformedSseUpdates. See getUpdateStream for details.
+     *
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the transformed BroadcastContent held by the client. Must not be null.
+     *                                If an empty string is provided, the current content is emitted right away.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be pushed to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface.
+     * @return a Flux of server-sent events, each carrying a json serialization of the transformed content.
+     */
+    public static <C extends BroadcastContent> Flux<ServerSentEvent<String>> getTransformedUpdateStream(BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, Transformer<C> transformer, String transformTag) {
+        if (broadcastContentHash == null)
+            throw new NullPointerException("BroadcastContentHash is null. Use getUpdateStream(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
+
+        return streamUpdates(broadcastContentManager, broadcastContentHash, transformer, transformTag);
+    }
+
+    /**
+     * Creates a Mono that is completed by an UpdateWaiter. The waiter completes a deferred result as usual, which in
+     * turn completes the Mono. The waiter is checked synchronously on subscription and otherwise registered at the
+     * manager until the Mono completes, times out or is cancelled.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is emitted.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param waiterFactory           creates the waiter that describes the client state.
+     * @return the Mono of the reply.
+     */
+    private static <C extends BroadcastContent> Mono<ResponseEntity<String>> awaitRelevantUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, Function<DeferredResult<ResponseEntity<String>>, UpdateWaiter<C, String>> waiterFactory) {
+
+        // The manager state is evaluated per subscription, so a Mono subscribed late or repeatedly does not act on
+        // stale state.
+        return Mono.defer(() -> {
+
+            // First of all don't bother with closed endpoints, directly send a 410 (Gone).
+            if (broadcastContentManager.isTerminated()) {
+                broadcastContentManager.getMetrics().terminated(HttpStatus.GONE.value());
+                return Mono.just(ResponseEntity.status(HttpStatus.GONE).build());
+            }
+
+            Mono<ResponseEntity<String>> reply = Mono.create(sink -> {
+                DeferredResult<ResponseEntity<String>> deferredResult = new DeferredResult<>();
+                deferredResult.setResultHandler(result -> sink.success(toResponseEntity(result)));
+                UpdateWaiter<C, String> waiter = waiterFactory.apply(deferredResult);
+                if (waiter.notifyUpdate())
+                    return;
+                if (!AdmissionControl.admits(broadcastContentManager)) {
+                    broadcastContentManager.getMetrics().rejected();
+                    sink.success(AdmissionControl.rejection(longPollTimeout));
+                    return;
+                }
+                sink.onDispose(() -> broadcastContentManager.removeWaiter(waiter));
+                broadcastContentManager.registerWaiter(waiter);
+            });
+            return reply.timeout(Duration.ofMillis(ResponseGenerator.jitteredTimeout(longPollTimeout)),
+                    Mono.fromSupplier(() -> {
+                        broadcastContentManager.getMetrics().timedOut();
+                        return ResponseGenerator.withRepollHint(ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT),
+                                broadcastContentManager).body("Request timeout occurred.");
+                    }));
+        });
+    }
+
+    /**
+     * Creates a Flux that is fed by a persistent SseSubscriber, registered at the manager until the Flux is cancelled
+     * or completed.
+     */
+    private static <C extends BroadcastContent> Flux<ServerSentEvent<String>> streamUpdates(BroadcastContentManager<C> broadcastContentManager, String clientContentHashString, Transformer<C> transformer, String transformTag) {
+
+        return Flux.create(sink -> {
+            SseSubscriber<C> subscriber = new SseSubscriber<>(broadcastContentManager, clientContentHashString,
+                    transformer, transformTag, fluxSink(sink));
+            if (subscriber.notifyUpdate())
+                return;
+            sink.onDispose(() -> {
+                subscriber.cancel();
+                broadcastContentManager.removeWaiter(subscriber);
+            });
+            broadcastContentManager.registerWaiter(subscriber);
+        }, FluxSink.OverflowStrategy.LATEST);
+    }
+
+    /**
+     * Creates an EventSink that emits server-sent events to a FluxSink.
+     */
+    private static SseSubscriber.EventSink fluxSink(FluxSink<ServerSentEvent<String>> sink) {
+        return new SseSubscriber.EventSink() {
+            @Override
+            public void send(long version, String serializedContent) {
+                sink.next(ServerSentEvent.builder(serializedContent).id(String.valueOf(version)).build());
+            }
+
+            @Override
+            public void complete() {
+                sink.complete();
+            }
+        };
+    }
+
+    /**
+     * Waiters complete the deferred result with a ResponseEntity, whatever the status code.
+     */
+    private static ResponseEntity<String> toResponseEntity(Object result) {
+
+        // The body of string replies is a String, so the entity can be re-typed without unchecked cast.
+        ResponseEntity<?> entity = (ResponseEntity<?>) result;
+        return new ResponseEntity<>((String) entity.getBody(), entity.getHeaders(), entity.getStatusCode());
+    }
+}
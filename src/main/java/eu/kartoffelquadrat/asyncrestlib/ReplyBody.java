@@ -0,0 +1,136 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Representation of the body of a 200 (OK) reply. Lets the same waiter logic complete replies with String bodies, as
+ * well as with shared byte[] bodies, optionally compressed.
+ *
+ * @param <B> as the body type of the reply.
+ * @author Maximilian Schiedermeier
+ */
+interface ReplyBody<B> {
+
+    /**
+     * The JSON serialization as String. The default representation.
+     */
+    ReplyBody<String> STRING = new ReplyBody<String>() {
+        @Override
+        public ResponseEntity<String> content(ResponseEntity.BodyBuilder reply, SerializedContent<?> content) {
+            return reply.body(content.getSerialized());
+        }
+
+        @Override
+        public ResponseEntity<String> text(ResponseEntity.BodyBuilder reply, String body) {
+            return reply.body(body);
+        }
+
+        @Override
+        public ResponseEntity<String> bytes(ResponseEntity.BodyBuilder reply, byte[] body) {
+            return reply.body(new String(body, StandardCharsets.UTF_8));
+        }
+    };
+
+    /**
+     * The JSON serialization as UTF-8 encoded bytes. The bytes are shared by all replies for the same content.
+     */
+    ReplyBody<byte[]> BYTES = new ByteBody(ContentCoding.IDENTITY, null);
+
+    /**
+     * Completes a reply with the serialization of a content.
+     *
+     * @param reply   as the reply, status and headers already set.
+     * @param content as the content to send.
+     * @return the completed reply.
+     */
+    ResponseEntity<B> content(ResponseEntity.BodyBuilder reply, SerializedContent<?> content);
+
+    /**
+     * Completes a reply with a body that was composed for a single request, e.g. a merge patch.
+     *
+     * @param reply as the reply, status and headers already set.
+     * @param body  as the body to send.
+     * @return the completed reply.
+     */
+    ResponseEntity<B> text(ResponseEntity.BodyBuilder reply, String body);
+
+    /**
+     * Completes a reply with a body that was composed for a single request from UTF-8 encoded parts, e.g. a catch-up
+     * list.
+     *
+     * @param reply as the reply, status and headers already set.
+     * @param body  as the UTF-8 encoded body to send.
+     * @return the completed reply.
+     */
+    ResponseEntity<B> bytes(ResponseEntity.BodyBuilder reply, byte[] body);
+
+    /**
+     * Creates a representation that sends the serialization as UTF-8 encoded bytes, with the provided coding applied.
+     * The bytes are shared by all replies for the same content and coding.
+     *
+     * @param coding as the content coding negotiated with the client.
+     * @return the byte[] representation.
+     */
+    static ReplyBody<byte[]> compressed(ContentCoding coding) {
+        return new ByteBody(coding, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    /**
+     * Creates a representation that sends the serialization in an additional format, e.g. CBOR, declared by the
+     * Content-Type header. The bytes are shared by all replies for the same content and format. Bodies composed per
+     * request are sent as JSON.
+     *
+     * @param format as the format negotiated with the client. Null for JSON.
+     * @return the byte[] representation.
+     */
+    static ReplyBody<byte[]> formatted(ContentFormat format) {
+        if (format == null)
+            return new ByteBody(ContentCoding.IDENTITY, HttpHeaders.ACCEPT);
+        return new ByteBody(ContentCoding.IDENTITY, HttpHeaders.ACCEPT) {
+            @Override
+            public ResponseEntity<byte[]> content(ResponseEntity.BodyBuilder reply, SerializedContent<?> content) {
+                return reply.header(HttpHeaders.VARY, HttpHeaders.ACCEPT).contentType(format.getMediaType())
+                        .body(content.getFormattedBytes(format));
+            }
+        };
+    }
+
+    /**
+     * Byte[] representation, optionally compressed. Bodies composed per request are never compressed.
+     */
+    class ByteBody implements ReplyBody<byte[]> {
+
+        private final ContentCoding coding;
+        // the request header the reply depends on, if any.
+        private final String vary;
+
+        ByteBody(ContentCoding coding, String vary) {
+            this.coding = coding;
+            this.vary = vary;
+        }
+
+        @Override
+        public ResponseEntity<byte[]> content(ResponseEntity.BodyBuilder reply, SerializedContent<?> content) {
+            byte[] encodedBytes = content.getEncodedBytes(coding);
+            if (encodedBytes != content.getSerializedBytes())
+                reply.header(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+            if (vary != null)
+                reply.header(HttpHeaders.VARY, vary);
+            return reply.contentType(MediaType.APPLICATION_JSON_UTF8).body(encodedBytes);
+        }
+
+        @Override
+        public ResponseEntity<byte[]> text(ResponseEntity.BodyBuilder reply, String body) {
+            return reply.body(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public ResponseEntity<byte[]> bytes(ResponseEntity.BodyBuilder reply, byte[] body) {
+            return reply.body(body);
+        }
+    }
+}
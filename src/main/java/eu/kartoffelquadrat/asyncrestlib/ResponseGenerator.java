@@ -3,6 +3,13 @@ package eu.kartoffelquadrat.asyncrestlib;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 /**
  * The ResponseGenerator provides notifications about status changes registered by a provided BroadcastContentManager.
@@ -15,6 +22,149 @@ import org.springframework.web.context.request.async.DeferredResult;
  */
 public class ResponseGenerator {
 
+    /**
+     * Name of the HTTP header that carries the content version in every 200 (OK) reply. Clients using version based
+     * updates send this value back with their next request.
+     */
+    public static final String VERSION_HEADER = "ARL-Content-Version";
+
+    /**
+     * Name of the HTTP header that tells whether a catch-up reply (see getUpdatesSince) lists every version since the
+     * client version (false), or only the current content, because intermediate versions were no longer retained
+     * (true).
+     */
+    public static final String RESYNC_HEADER = "ARL-Resync";
+
+    /**
+     * Name of the HTTP header that marks a delta reply (see getDeltaUpdate). Carries the version the body has to be
+     * applied to. Replies without this header carry the full content.
+     */
+    public static final String DELTA_BASE_HEADER = "ARL-Delta-Base";
+
+    /**
+     * Name of the HTTP header that suggests how many milliseconds a client should wait before it issues its next
+     * request. Sent with 200 (OK) and 408 (Request Timeout) replies, if a re-poll delay is configured (see
+     * setRepollDelay).
+     */
+    public static final String REPOLL_HEADER = "ARL-Repoll-After";
+
+    // creates the threads that wait for updates on behalf of pending requests, unless the manager is event-driven.
+    private static volatile ThreadFactory notifyThreadFactory = NotifyThreadFactories.defaultFactory();
+
+    // fraction of the long-poll timeout by which the timeout of a request is randomly shortened.
+    private static volatile double timeoutJitter = 0;
+
+    // bounds of the suggested re-poll delay in milliseconds, as array so both are replaced at once. Null if disabled.
+    private static volatile long[] repollDelay = null;
+
+    /**
+     * Replaces the factory used to create the threads that await updates on behalf of pending requests. The default
+     * factory creates virtual threads on Java 21+ runtimes and platform threads on older runtimes. Virtual threads
+     * require the multi-release section of the library jar, which released jars always contain. Jars built locally
+     * with an older JDK, or the plain class directories, always use platform threads. Not relevant for event-driven
+     * BroadcastContentManagers, which do not use a thread per request.
+     *
+     * @param threadFactory as the factory for all future wait threads. Must not be null.
+     */
+    public static void setNotifyThreadFactory(ThreadFactory threadFactory) {
+        if (threadFactory == null)
+            throw new NullPointerException("Notify thread factory must not be null.");
+        notifyThreadFactory = threadFactory;
+    }
+
+    /**
+     * Restores the runtime specific default factory for threads that await updates on behalf of pending requests.
+     */
+    public static void resetNotifyThreadFactory() {
+        notifyThreadFactory = NotifyThreadFactories.defaultFactory();
+    }
+
+    /**
+     * Randomizes the timeout of future long-poll requests. Clients that connected at the same moment, e.g. right after
+     * an update, otherwise all time out and reconnect at the same moment. The timeout of every request is shortened by
+     * a random amount of up to the provided fraction, so the requested longPollTimeout remains the upper bound.
+     *
+     * @param fraction as the maximum share of the timeout that is cut off, at least 0 (no jitter, default) and below
+     *                 1.
+     */
+    public static void setTimeoutJitter(double fraction) {
+        if (!(fraction >= 0 && fraction < 1))
+            throw new IllegalArgumentException("Timeout jitter must be at least 0 and below 1.");
+        timeoutJitter = fraction;
+    }
+
+    /**
+     * Getter for the share of the timeout that is randomly cut off.
+     *
+     * @return the jitter fraction, 0 if timeouts are not randomized.
+     */
+    public static double getTimeoutJitter() {
+        return timeoutJitter;
+    }
+
+    /**
+     * Lets 200 (OK) and 408 (Request Timeout) replies suggest a delay before the next request, in the REPOLL_HEADER.
+     * The suggested delay is the minimum, plus a random share of the range up to the maximum that grows with the
+     * utilization of the manager and the node (see AdmissionControl). Under load reconnects are therefore spread across
+     * a wider window. May be called at any time, e.g. to raise the delay while the node is under load.
+     *
+     * @param minMillis as the delay suggested on an idle node, not negative.
+     * @param maxMillis as the upper bound of the delay suggested on a saturated node, at least minMillis.
+     */
+    public static void setRepollDelay(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis)
+            throw new IllegalArgumentException("Re-poll delay bounds must satisfy 0 <= min <= max.");
+        repollDelay = new long[]{minMillis, maxMillis};
+    }
+
+    /**
+     * Stops suggesting re-poll delays. Replies no longer carry the REPOLL_HEADER (default).
+     */
+    public static void disableRepollDelay() {
+        repollDelay = null;
+    }
+
+    /**
+     * Determines the timeout of a new request, shortened by the configured jitter.
+     *
+     * @param longPollTimeout as the timeout requested by the caller, in milliseconds.
+     * @return the randomized timeout, never above longPollTimeout.
+     */
+    static long jitteredTimeout(long longPollTimeout) {
+        double jitter = timeoutJitter;
+        if (jitter == 0 || longPollTimeout <= 1)
+            return longPollTimeout;
+        long maxCut = (long) (longPollTimeout * jitter);
+        return longPollTimeout - ThreadLocalRandom.current().nextLong(maxCut + 1);
+    }
+
+    /**
+     * Adds the suggested re-poll delay to a reply, if configured. The delay is scaled by the highest utilization among
+     * the provided managers.
+     *
+     * @param builder                  as the builder of the 200 or 408 reply.
+     * @param broadcastContentManagers as the managers the request waited for.
+     * @return the provided builder.
+     */
+    static <T extends ResponseEntity.HeadersBuilder<T>> T withRepollHint(T builder,
+                                                                      Iterable<? extends BroadcastContentManager<?>> broadcastContentManagers) {
+        long[] bounds = repollDelay;
+        if (bounds == null)
+            return builder;
+
+        double utilization = 0;
+        for (BroadcastContentManager<?> broadcastContentManager : broadcastContentManagers)
+            utilization = Math.max(utilization, AdmissionControl.utilization(broadcastContentManager));
+        long spread = (long) ((bounds[1] - bounds[0]) * utilization);
+        long delay = bounds[0] + (spread == 0 ? 0 : ThreadLocalRandom.current().nextLong(spread + 1));
+        return builder.header(REPOLL_HEADER, String.valueOf(delay));
+    }
+
+    static <T extends ResponseEntity.HeadersBuilder<T>> T withRepollHint(T builder,
+                                                                      BroadcastContentManager<?> broadcastContentManager) {
+        return withRepollHint(builder, Collections.singleton(broadcastContentManager));
+    }
+
     /**
      * The most basic usage of the Async Rest Library. If called, the result is deferred until a status change appears
      * on server side (new BroadcastContent registered) or a timeout occurred, whatever comes first. The result only
@@ -31,7 +181,8 @@ public class ResponseGenerator {
      */
     public static <C extends BroadcastContent> DeferredResult<ResponseEntity<String>> getAsyncUpdate(long longPollTimeout, BroadcastContentManager broadcastContentManager) {
 
-        return getDeferredResult(longPollTimeout, broadcastContentManager, null, new IdentityTransformer(), null);
+        return getDeferredResult(longPollTimeout, broadcastContentManager, null, new IdentityTransformer(), null,
+                ReplyBody.STRING);
     }
 
     /**
@@ -61,7 +212,7 @@ public class ResponseGenerator {
             throw new NullPointerException("BroadcastContentHash is null. Use getAsyncUpdate(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
 
         return getDeferredResult(longPollTimeout, broadcastContentManager, broadcastContentHash,
-                new IdentityTransformer(), null);
+                new IdentityTransformer(), null, ReplyBody.STRING);
     }
 
     /**
@@ -108,7 +259,264 @@ public class ResponseGenerator {
             throw new NullPointerException("BroadcastContentHash is null. Use getAsyncUpdate(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
 
         return getDeferredResult(longPollTimeout, broadcastContentManager, broadcastContentHash, transformer,
-                transformTag);
+                transformTag, ReplyBody.STRING);
+    }
+
+    /**
+     * Variant of the hash-based update that identifies the client state by a version number instead of a hash. Every
+     * content change of the BroadcastContentManager increments its version, and every 200 (OK) reply carries the
+     * version of the returned content in the ARL-Content-Version header. Comparing versions takes constant time and does
+     * not require any serialization. Note that versions, unlike hashes, do not have content-equality semantics: a
+     * change back to a previous state still counts as update.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header. If the BroadcastContentManager holds a newer version,
+     *                                the response is synchronous. Use 0 to retrieve the current content synchronously.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return a DeferredResult that wraps the determined BroadCastContent revision in a ResponseEntity so it can be
+     * used for HTTP/REST replies. As the eliciting process is potentially asynchronous, the result furthermore has to
+     * be wrapped into a DeferredResult with preset timeout.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<String>> getVersionBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion) {
+
+        return getTransformedVersionBasedUpdate(longPollTimeout, broadcastContentManager, clientContentVersion,
+                new IdentityTransformer<>(), null);
+    }
+
+    /**
+     * Variant of the transformed update that identifies the client state by a version number instead of a hash. See
+     * getVersionBasedUpdate and getTransformedUpdate for details. A new content version is not propagated if its
+     * transformation is empty.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be returned to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return a DeferredResult that wraps the determined transformed BroadCastContent revision in a ResponseEntity so
+     * it can be used for HTTP/REST replies. As the eliciting process is potentially asynchronous, the result
+     * furthermore has to be wrapped into a DeferredResult with preset timeout.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<String>> getTransformedVersionBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion, Transformer<C> transformer, String transformTag) {
+
+        return getVersionBasedDeferredResult(longPollTimeout, broadcastContentManager, clientContentVersion,
+                transformer, transformTag, ReplyBody.STRING);
+    }
+
+    /**
+     * Catch-up variant of the version-based update. Rather than only the current content, the reply lists every content
+     * version since the client version, as JSON array of objects with the fields "version" and "content", oldest first.
+     * Requires a history on the BroadcastContentManager, see setHistoryCapacity. If the client version is older than the
+     * oldest retained version, the array only contains the current content and the ARL-Resync header is set to true, so
+     * the client can discard its local state. The ARL-Content-Version header carries the newest listed version.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header. If the BroadcastContentManager holds a newer version,
+     *                                the response is synchronous.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return a DeferredResult that wraps the list of missed BroadCastContent revisions in a ResponseEntity so it can
+     * be used for HTTP/REST replies. As the eliciting process is potentially asynchronous, the result furthermore has
+     * to be wrapped into a DeferredResult with preset timeout.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<String>> getUpdatesSince(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion) {
+
+        DeferredResult<ResponseEntity<String>> deferredResult = createDeferredResult(longPollTimeout,
+                broadcastContentManager);
+        if (deferredResult.isSetOrExpired())
+            return deferredResult;
+
+        return awaitRelevantUpdate(longPollTimeout, broadcastContentManager, UpdateWaiter.forCatchUp(broadcastContentManager,
+                clientContentVersion, ReplyBody.STRING, deferredResult), deferredResult);
+    }
+
+    /**
+     * Delta variant of the version-based update. If the BroadcastContentManager still retains the client version (see
+     * setHistoryCapacity), the reply is a JSON merge patch (RFC 7386, media type application/merge-patch+json) from the
+     * client version to the current version, and the ARL-Delta-Base header carries the client version. Otherwise, or if
+     * the patch would not be smaller than the content (e.g. because the content has null members, which merge patches
+     * can not express), the reply is the full content without ARL-Delta-Base header. Patches are computed once per pair
+     * of versions and shared by all clients holding the same version.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header. If the BroadcastContentManager holds a newer version,
+     *                                the response is synchronous.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return a DeferredResult that wraps the patch or the full BroadCastContent revision in a ResponseEntity so it can
+     * be used for HTTP/REST replies. As the eliciting process is potentially asynchronous, the result furthermore has
+     * to be wrapped into a DeferredResult with preset timeout.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<String>> getDeltaUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion) {
+
+        DeferredResult<ResponseEntity<String>> deferredResult = createDeferredResult(longPollTimeout,
+                broadcastContentManager);
+        if (deferredResult.isSetOrExpired())
+            return deferredResult;
+
+        return awaitRelevantUpdate(longPollTimeout, broadcastContentManager, UpdateWaiter.forDelta(broadcastContentManager,
+                clientContentVersion, ReplyBody.STRING, deferredResult), deferredResult);
+    }
+
+    /**
+     * Precompressed variant of getHashBasedUpdate. The body is the UTF-8 encoded JSON serialization, compressed with
+     * the coding preferred by the client (gzip or deflate, see the Accept-Encoding request header) and flagged by the
+     * Content-Encoding header. Each content version is compressed at most once per coding, then the very same bytes are
+     * sent to all clients, so the servlet container does not have to compress the reply again. Compression should
+     * therefore be disabled in the container for this endpoint. Clients that accept no supported coding receive the
+     * plain serialization, as do all clients if compression does not reduce the size.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the BroadcastContent held by the client. Must not be null. See
+     *                                getHashBasedUpdate.
+     * @param acceptEncoding          the value of the Accept-Encoding request header. Can be null.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return a DeferredResult that wraps the (compressed) BroadCastContent revision in a ResponseEntity so it can be
+     * used for HTTP/REST replies. As the eliciting process is potentially asynchronous, the result furthermore has to
+     * be wrapped into a DeferredResult with preset timeout.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getCompressedHashBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, String acceptEncoding) {
+
+        return getCompressedTransformedUpdate(longPollTimeout, broadcastContentManager, broadcastContentHash,
+                new IdentityTransformer<>(), null, acceptEncoding);
+    }
+
+    /**
+     * Precompressed variant of getTransformedUpdate. Transformed views are compressed once per content version,
+     * transformer, tag and coding. See getCompressedHashBasedUpdate for details.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the transformed BroadcastContent held by the client. Must not be null.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be returned to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param acceptEncoding          the value of the Accept-Encoding request header. Can be null.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return a DeferredResult that wraps the (compressed) transformed BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getCompressedTransformedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, Transformer<C> transformer, String transformTag, String acceptEncoding) {
+        if (broadcastContentHash == null)
+            throw new NullPointerException("BroadcastContentHash is null. Use getAsyncUpdate(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
+
+        return getDeferredResult(longPollTimeout, broadcastContentManager, broadcastContentHash, transformer,
+                transformTag, ReplyBody.compressed(ContentCoding.negotiate(acceptEncoding)));
+    }
+
+    /**
+     * Precompressed variant of getVersionBasedUpdate. See getCompressedHashBasedUpdate for details.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client, as received in the last
+     *                                ARL-Content-Version header.
+     * @param acceptEncoding          the value of the Accept-Encoding request header. Can be null.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return a DeferredResult that wraps the (compressed) BroadCastContent revision in a ResponseEntity.
+     */
+    public static <C extends BroadcastContent> DeferredResult<ResponseEntity<byte[]>> getCompressedVersionBasedUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion, String acceptEncoding) {
+
+        return getVersionBasedDeferredResult(longPollTimeout, broadcastContentManager, clientContentVersion,
+                new IdentityTransformer<>(), null, ReplyBody.compressed(ContentCoding.negotiate(acceptEncoding)));
+    }
+
+    /**
+     * Multiplexed variant of getHashBasedUpdate, to observe many resources with a single request. The client provides
+     * the hash of every resource it holds. The reply is deferred until at least one resource differs in hash (or is
+     * terminated), then lists all such resources in one json object, keyed by resource id. Every entry holds the
+     * version, hash and content of the resource, terminated resources are listed as {"terminated": true}:
+     * <pre>{"chat": {"version": 7, "hash": "...", "content": {...}}, "lobby": {"terminated": true}}</pre>
+     * Resources the client holds no hash for are listed right away. A pending multiplexed request is a single waiter,
+     * registered at all observed managers, and does not occupy a thread while waiting (see
+     * enableEventDrivenNotification).
+     *
+     * @param longPollTimeout          maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManagers the observed resources, by resource id. Must not be empty.
+     * @param clientContentHashes      the hashes of the resources held by the client, by resource id. Hashes of unknown
+     *                                 resource ids are ignored.
+     * @return a DeferredResult that wraps the combined json object of all changed resources in a ResponseEntity.
+     */
+    public static DeferredResult<ResponseEntity<String>> getMultiplexedUpdate(long longPollTimeout, Map<String, ? extends BroadcastContentManager<?>> broadcastContentManagers, Map<String, String> clientContentHashes) {
+        if (clientContentHashes == null)
+            throw new NullPointerException("Client content hashes must not be null. Use an empty map to retrieve " + "all resources synchronously.");
+
+        return awaitMultiplexedUpdate(longPollTimeout, broadcastContentManagers, deferredResult ->
+                MultiplexWaiter.forHashes(broadcastContentManagers, clientContentHashes, deferredResult));
+    }
+
+    /**
+     * Multiplexed variant of getVersionBasedUpdate. Same as getMultiplexedUpdate, but the client provides the version of
+     * every resource it holds, and a resource is listed once its version is newer. Entries do not list hashes.
+     *
+     * @param longPollTimeout          maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManagers the observed resources, by resource id. Must not be empty.
+     * @param clientContentVersions    the versions of the resources held by the client, by resource id.
+     * @return a DeferredResult that wraps the combined json object of all changed resources in a ResponseEntity.
+     */
+    public static DeferredResult<ResponseEntity<String>> getMultiplexedVersionBasedUpdate(long longPollTimeout, Map<String, ? extends BroadcastContentManager<?>> broadcastContentManagers, Map<String, Long> clientContentVersions) {
+        if (clientContentVersions == null)
+            throw new NullPointerException("Client content versions must not be null. Use an empty map to retrieve " + "all resources synchronously.");
+
+        return awaitMultiplexedUpdate(longPollTimeout, broadcastContentManagers, deferredResult ->
+                MultiplexWaiter.forVersions(broadcastContentManagers, clientContentVersions, deferredResult));
+    }
+
+    /**
+     * Registers a multiplexed waiter at all observed managers and evaluates it once, so updates that occurred before
+     * the registration completed are not missed.
+     */
+    private static DeferredResult<ResponseEntity<String>> awaitMultiplexedUpdate(long longPollTimeout, Map<String, ? extends BroadcastContentManager<?>> broadcastContentManagers, Function<DeferredResult<ResponseEntity<String>>, MultiplexWaiter> waiterFactory) {
+        if (broadcastContentManagers.isEmpty())
+            throw new IllegalArgumentException("At least one BroadcastContentManager must be observed.");
+
+        DeferredResult<ResponseEntity<String>> deferredResult = new DeferredResult<>(jitteredTimeout(longPollTimeout));
+        MultiplexWaiter waiter = waiterFactory.apply(deferredResult);
+
+        // If any observed manager is saturated, the request is only answered if it does not have to wait.
+        for (BroadcastContentManager<?> broadcastContentManager : broadcastContentManagers.values()) {
+            if (!AdmissionControl.admits(broadcastContentManager)) {
+                if (!waiter.notifyUpdate()) {
+                    deferredResult.setErrorResult(AdmissionControl.rejection(longPollTimeout));
+                    broadcastContentManager.getMetrics().rejected();
+                }
+                return deferredResult;
+            }
+        }
+
+        waiter.register();
+        if (waiter.notifyUpdate())
+            return deferredResult;
+
+        deferredResult.onTimeout(() -> {
+            waiter.unregister();
+            deferredResult.setErrorResult(withRepollHint(ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT),
+                    broadcastContentManagers.values()).body("Request timeout occurred."));
+        });
+        deferredResult.onError(throwable -> waiter.unregister());
+        deferredResult.onCompletion(waiter::unregister);
+        return deferredResult;
     }
 
     /**
@@ -127,77 +535,252 @@ public class ResponseGenerator {
      * @param transformTag            an additional string that can be used by the optional transformer to steer the
      *                                applied transformation algorithm. Can be null e.g. if the identity-transformer is
      *                                applied.
+     * @param replyBody               the representation of the reply body.
      * @param <C>                     as the specific library-external class that implements the broadcastContent
      *                                interface. Using a generic allows to use the library without a need to cast the
      *                                result.
+     * @param <B>                     as the body type of the reply.
      * @return a DeferredResult that wraps the determined transformed BroadCastContent revision in a ResponseEntity so
      * it can be used for HTTP/REST replies. As the eliciting process is potentially asynchronous, the result
      * furthermore has to be wrapped into a DeferredResult with preset timeout.
      */
-    private static <C extends BroadcastContent> DeferredResult<ResponseEntity<String>> getDeferredResult(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String clientContentHashString, Transformer<C> transformer, String transformTag) {
+    static <C extends BroadcastContent, B> DeferredResult<ResponseEntity<B>> getDeferredResult(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, String clientContentHashString, Transformer<C> transformer, String transformTag, ReplyBody<B> replyBody) {
 
-        // First of all don't bother with closed endpoints, directly send a 204 (Gone).
-        if(broadcastContentManager.isTerminated()) {
-            DeferredResult<ResponseEntity<String>> deferredResult = new DeferredResult<>(longPollTimeout);
-            deferredResult.setErrorResult(ResponseEntity.status((HttpStatus.GONE)));
+        DeferredResult<ResponseEntity<B>> deferredResult = createDeferredResult(longPollTimeout,
+                broadcastContentManager);
+        if (deferredResult.isSetOrExpired())
             return deferredResult;
-        }
 
-        // We configure a timeout + strategy, so we automatically get an HTTP timeout header if no update was
-        // registered by the broadcastContentManager within a given time-frame.
-        DeferredResult<ResponseEntity<String>> deferredResult = new DeferredResult<>(longPollTimeout);
-        deferredResult.onTimeout(() -> deferredResult.setErrorResult(ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT).body("Request timeout occurred."))); // This is very hard to test with JUNIT.
-
-        // If a hash is provided we run a preliminary check (the current broadcast content might already be new to the
-        // caller. In that case we forget about async updates and directly return the current broadcast content as
-        // synchronous reply.
-        if (isSynchronousUpdateRequired(clientContentHashString, broadcastContentManager
-                , transformer, transformTag)) {
-            // The currently stored version is an update to caller. We therefore send a direct update
-            C transformedBroadcastContent =
-                    transformer.transform(broadcastContentManager.getCurrentBroadcastContent(), transformTag);
-            deferredResult.setResult(ResponseEntity.ok(broadcastContentManager.serializeCustomContentUsingAssociatedSerializer(transformedBroadcastContent)));
+        // Without hash, the client is only interested in versions resulting from a future status change.
+        UpdateWaiter<C, B> waiter;
+        if (clientContentHashString == null)
+            waiter = UpdateWaiter.forNextUpdate(broadcastContentManager,
+                    broadcastContentManager.getCurrentSnapshot().getVersion(), transformer, transformTag, replyBody,
+                    deferredResult);
+        else
+            waiter = UpdateWaiter.forHash(broadcastContentManager, clientContentHashString, transformer, transformTag,
+                    replyBody, deferredResult);
+
+        return awaitRelevantUpdate(longPollTimeout, broadcastContentManager, waiter, deferredResult);
+    }
+
+    /**
+     * Version-based counterpart of getDeferredResult.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentVersion    the content version currently held by the client.
+     * @param transformer             the transformation algorithm to be applied on the maintained broadcastContent.
+     * @param transformTag            an additional string that can be used by the optional transformer.
+     * @param replyBody               the representation of the reply body.
+     * @return a DeferredResult that wraps the determined transformed BroadCastContent revision in a ResponseEntity.
+     */
+    static <C extends BroadcastContent, B> DeferredResult<ResponseEntity<B>> getVersionBasedDeferredResult(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, long clientContentVersion, Transformer<C> transformer, String transformTag, ReplyBody<B> replyBody) {
+
+        DeferredResult<ResponseEntity<B>> deferredResult = createDeferredResult(longPollTimeout,
+                broadcastContentManager);
+        if (deferredResult.isSetOrExpired())
+            return deferredResult;
+
+        return awaitRelevantUpdate(longPollTimeout, broadcastContentManager, UpdateWaiter.forVersion(broadcastContentManager,
+                clientContentVersion, transformer, transformTag, replyBody, deferredResult), deferredResult);
+    }
+
+    /**
+     * Creates the deferred result for a new request. Closed endpoints directly get a 410 (Gone).
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @return a new deferred result, already completed if the broadcastContentManager is terminated.
+     */
+    static <B> DeferredResult<ResponseEntity<B>> createDeferredResult(long longPollTimeout,
+                                                                      BroadcastContentManager<?> broadcastContentManager) {
+
+        // First of all don't bother with closed endpoints, directly send a 410 (Gone).
+        DeferredResult<ResponseEntity<B>> deferredResult = new DeferredResult<>(jitteredTimeout(longPollTimeout));
+        if (broadcastContentManager.isTerminated()) {
+            deferredResult.setErrorResult(ResponseEntity.status(HttpStatus.GONE).build());
+            broadcastContentManager.getMetrics().terminated(HttpStatus.GONE.value());
             return deferredResult;
         }
+        return deferredResult;
+    }
+
+    /**
+     * Completes the deferred result of a waiter, either synchronously or on the first relevant state change. Requests
+     * that have to wait are rejected with 503 if the manager or the node are saturated, see AdmissionControl.
+     *
+     * @param longPollTimeout         maximum amount in milliseconds before a result is returned.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param waiter                  as the pending request, describing the client state.
+     * @param deferredResult          as the result object completed by the waiter.
+     * @return the provided deferredResult.
+     */
+    static <C extends BroadcastContent, B> DeferredResult<ResponseEntity<B>> awaitRelevantUpdate(long longPollTimeout, BroadcastContentManager<C> broadcastContentManager, UpdateWaiter<C, B> waiter, DeferredResult<ResponseEntity<B>> deferredResult) {
+
+        // We first run a preliminary check (the current broadcast content might already be new to the caller. In that
+        // case we forget about async updates and directly return the current broadcast content as synchronous reply.
+        // The check is based on the current snapshot, so its serialization is shared with all other requests.
+        if (waiter.notifyUpdate())
+            return deferredResult;
 
+        // The request has to wait. It is only parked if neither the manager nor the node are saturated.
+        if (!AdmissionControl.admits(broadcastContentManager)) {
+            deferredResult.setErrorResult(AdmissionControl.rejection(longPollTimeout));
+            broadcastContentManager.getMetrics().rejected();
+            return deferredResult;
+        }
 
         // When the above IF did not trigger, the client either already holds the current version (so we need to
         // wait for something to happen on server side), or he did not provide a hash at all (so he is only
         // interested in versions resulting from a future status change). In either case we have to wait for updates
-        // and provide an asynchronous result. The waiting is done in an extra thread, so the application-container's
-        // worker thread who handles this call-stack is not blocked.
-        // The new thread can be interrupted by the already running DeferredResult's timeout handler.
-        // This is a blocking thread, so we use the ForkJoinPoll, to avoid waisting ordinary worker threads.
-        Thread awaitInternalStateChangeAndUpdateDeferredResultIfNeededThread =
-                new AsyncNotifyThread<>(broadcastContentManager,
-                        clientContentHashString, transformer, transformTag, deferredResult);
-        awaitInternalStateChangeAndUpdateDeferredResultIfNeededThread.start();
+        // and provide an asynchronous result.
+        Runnable cancellation = listen(broadcastContentManager, waiter);
+
+        // We configure a timeout + strategy, so we automatically get an HTTP timeout header if no update was
+        // registered by the broadcastContentManager within a given time-frame. On timeout, error (e.g. client
+        // disconnect) and completion the waiter is released right away, rather than on the next content change.
+        deferredResult.onTimeout(() -> {
+            cancellation.run();
+            if (deferredResult.setErrorResult(withRepollHint(ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT),
+                    broadcastContentManager).body("Request timeout occurred.")))
+                broadcastContentManager.getMetrics().timedOut();
+        });
+        deferredResult.onError(throwable -> cancellation.run());
+        deferredResult.onCompletion(cancellation);
 
         return deferredResult;
     }
 
     /**
-     * This method uses a provided hash to check if the caller holds a deprecated version of thecurrently managed
-     * broadcastContent (or the requested transformation of the current broadcastContent). This check is required to
-     * determine if a direct synchronous update is applicable.
+     * Server-Sent Events variant of getAsyncUpdate. Rather than a single reply, the returned stream pushes every future
+     * status change as event, until the timeout occurs or the BroadcastContentManager is terminated. The connection
+     * stays open across updates, so clients do not have to issue a new request per update. Every event carries the
+     * content (serialized as json string) as data and the content version as event id. A state is not pushed if its
+     * hash equals the hash of the last pushed state.
+     *
+     * @param streamTimeout           maximum amount in milliseconds before the stream is closed.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return an SseEmitter that can be directly returned by a Spring Rest controller. The emitter is already
+     * completed if the broadcastContentManager is terminated.
      */
-    private static boolean isSynchronousUpdateRequired(String callerBroadcastContentHash,
-                                                       BroadcastContentManager broadcastContentManager,
-                                                       Transformer transformer, String transformerTag) {
-        // Direct updates are only possible if a hash mismatch can be detected. No hash provided, means no direct
-        // updates possible.
-        if (callerBroadcastContentHash == null)
-            return false;
+    public static <C extends BroadcastContent> SseEmitter getSseUpdates(long streamTimeout, BroadcastContentManager<C> broadcastContentManager) {
 
-        // compute hash of the transformed version of what is currently stored.
-        BroadcastContent transformedBroadcastContent = transformer.transform(broadcastContentManager.getCurrentBroadcastContent(), transformerTag);
+        return getSseEmitter(streamTimeout, broadcastContentManager, null, new IdentityTransformer<>(), null);
+    }
 
-        // Immediate updates are not required for empty / whitespace messages.
-        if (transformedBroadcastContent.isEmpty())
-            return false;
+    /**
+     * Server-Sent Events variant of getHashBasedUpdate. The current content is pushed right away, unless it matches the
+     * provided hash. See getSseUpdates for details.
+     *
+     * @param streamTimeout           maximum amount in milliseconds before the stream is closed.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the BroadcastContent held by the client. Must not be null. If an empty
+     *                                string is provided, the current BroadcastContent is pushed right away.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return an SseEmitter that can be directly returned by a Spring Rest controller.
+     */
+    public static <C extends BroadcastContent> SseEmitter getHashBasedSseUpdates(long streamTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash) {
+        if (broadcastContentHash == null)
+            throw new NullPointerException("BroadcastContentHash is null. Use getSseUpdates(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
+
+        return getSseEmitter(streamTimeout, broadcastContentManager, broadcastContentHash,
+                new IdentityTransformer<>(), null);
+    }
+
+    /**
+     * Server-Sent Events variant of getTransformedUpdate. Only non-empty transformed states that differ in hash from the
+     * last pushed transformed state are pushed. See getSseUpdates and getTransformedUpdate for details.
+     *
+     * @param streamTimeout           maximum amount in milliseconds before the stream is closed.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param broadcastContentHash    a hash of the transformed BroadcastContent held by the client. Must not be null.
+     * @param transformer             the algorithm run by the server to generate a manipulated copy that will
+     *                                potentially be pushed to the caller.
+     * @param transformTag            the string parameter used to steer the provided transformer entity.
+     * @param <C>                     as the specific library-external class that implements the broadcastContent
+     *                                interface. Using a generic allows to use the library without a need to cast the
+     *                                result.
+     * @return an SseEmitter that can be directly returned by a Spring Rest controller.
+     */
+    public static <C extends BroadcastContent> SseEmitter getTransformedSseUpdates(long streamTimeout, BroadcastContentManager<C> broadcastContentManager, String broadcastContentHash, Transformer<C> transformer, String transformTag) {
+        if (broadcastContentHash == null)
+            throw new NullPointerException("BroadcastContentHash is null. Use getSseUpdates(...) if you are only " + "interested in future updates or set it to the empty-string for a synced update.");
 
-        // a direct update is required, if the computed hash is distinct to the version provided by the caller.
-        return !callerBroadcastContentHash.equals(broadcastContentManager.getHashOfCustomContentUsingAssociatedSerializer(transformedBroadcastContent));
+        return getSseEmitter(streamTimeout, broadcastContentManager, broadcastContentHash, transformer, transformTag);
     }
 
+    /**
+     * Used by public methods to create an event stream that is fed by a persistent subscriber.
+     *
+     * @param streamTimeout           maximum amount in milliseconds before the stream is closed.
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param clientContentHashString hash of the (transformed) broadcast content held by the client. Null if the
+     *                                client is only interested in future updates.
+     * @param transformer             the transformation algorithm to be applied on the maintained broadcastContent.
+     * @param transformTag            an additional string that can be used by the optional transformer.
+     * @return the event stream.
+     */
+    private static <C extends BroadcastContent> SseEmitter getSseEmitter(long streamTimeout, BroadcastContentManager<C> broadcastContentManager, String clientContentHashString, Transformer<C> transformer, String transformTag) {
+
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+        SseSubscriber<C> subscriber = new SseSubscriber<>(broadcastContentManager, clientContentHashString,
+                transformer, transformTag, SseSubscriber.emitterSink(emitter));
+
+        // The preliminary check pushes the current state, if already relevant. Events sent before the emitter is
+        // handed to spring are buffered. The check only reports done if the manager is terminated.
+        if (subscriber.notifyUpdate())
+            return emitter;
+
+        Runnable cancellation = listen(broadcastContentManager, subscriber);
+        Runnable release = () -> {
+            subscriber.cancel();
+            cancellation.run();
+        };
+        emitter.onTimeout(() -> {
+            release.run();
+            emitter.complete();
+        });
+        emitter.onError(throwable -> release.run());
+        emitter.onCompletion(release);
+
+        return emitter;
+    }
+
+    /**
+     * Hands a listener to the BroadcastContentManager, so it is evaluated on every state change. Event-driven managers
+     * keep track of listeners themselves and evaluate them from their dispatcher. No thread is occupied while waiting.
+     * Otherwise the waiting is done in an extra thread, so the application-container's worker thread who handles this
+     * call-stack is not blocked.
+     *
+     * @param broadcastContentManager reference to the entity that handles broadcast content status updated.
+     * @param listener                as the pending request or stream.
+     * @return the action that releases the listener (and its thread), to be run once the client is gone.
+     */
+    private static <C extends BroadcastContent> Runnable listen(BroadcastContentManager<C> broadcastContentManager,
+                                                                UpdateListener listener) {
+        if (broadcastContentManager.isEventDriven()) {
+            broadcastContentManager.registerWaiter(listener);
+            return () -> broadcastContentManager.removeWaiter(listener);
+        }
+
+        // The wait is counted before the thread starts, so a burst of requests is reflected in the admission state right
+        // away.
+        broadcastContentManager.blockingWaitStarted();
+        Thread awaitInternalStateChangeAndUpdateDeferredResultIfNeededThread;
+        try {
+            awaitInternalStateChangeAndUpdateDeferredResultIfNeededThread =
+                    notifyThreadFactory.newThread(new AsyncNotifyTask<>(broadcastContentManager, listener));
+            awaitInternalStateChangeAndUpdateDeferredResultIfNeededThread.start();
+        } catch (RuntimeException | Error e) {
+            broadcastContentManager.blockingWaitFinished();
+            throw e;
+        }
+        return awaitInternalStateChangeAndUpdateDeferredResultIfNeededThread::interrupt;
+    }
 }
@@ -0,0 +1,155 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Wraps a BroadcastContent together with its JSON serialization and the hash of that serialization. The content is
+ * serialized at most once, into UTF-8 encoded bytes, on first access. The hash and the String representation are
+ * derived from these bytes and shared by all readers. Instances must therefore only be created for content that is no
+ * longer modified. Compressed variants of the serialization are likewise computed once per content coding, and
+ * serializations in additional formats once per format, on first access.
+ *
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @author Maximilian Schiedermeier
+ */
+class SerializedContent<C extends BroadcastContent> {
+
+    private final ContentSerializer serializer;
+    private final C content;
+    private volatile byte[] serializedBytes;
+    private volatile String serialized;
+    private volatile String hash;
+    // encoded serializations, indexed by content coding. Created on first access.
+    private volatile AtomicReferenceArray<byte[]> encodedBytes;
+    // serializations in additional formats, e.g. CBOR. Created on first access.
+    private volatile Map<ContentFormat, byte[]> formattedBytes;
+
+    /**
+     * @param serializer as the serialization and hashing rules used for the content.
+     * @param content    as the wrapped content. Can be null, e.g. if a transformer erased the content entirely.
+     */
+    SerializedContent(ContentSerializer serializer, C content) {
+        this.serializer = serializer;
+        this.content = content;
+    }
+
+    C getContent() {
+        return content;
+    }
+
+    /**
+     * Tells whether the wrapped content is not considered an update, because it is null or empty.
+     *
+     * @return a flag whether the content is empty
+     */
+    boolean isEmpty() {
+        return content == null || content.isEmpty();
+    }
+
+    /**
+     * Returns the UTF-8 encoded JSON serialization of the wrapped content. The serialization is only computed once.
+     * The returned array is shared and must not be modified.
+     *
+     * @return json serialization of the wrapped content.
+     */
+    byte[] getSerializedBytes() {
+        byte[] result = serializedBytes;
+        if (result == null) {
+            synchronized (this) {
+                result = serializedBytes;
+                if (result == null) {
+                    result = serializer.serialize(content);
+                    serializedBytes = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the JSON serialization of the wrapped content as String. Decoded once from the shared serialization.
+     *
+     * @return json string serialization of the wrapped content.
+     */
+    String getSerialized() {
+        String result = serialized;
+        if (result == null) {
+            result = new String(getSerializedBytes(), StandardCharsets.UTF_8);
+            serialized = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hash of the JSON serialization of the wrapped content. The hash is only computed once, based on the
+     * likewise shared serialization.
+     *
+     * @return hash of the wrapped content.
+     */
+    String getHash() {
+        String result = hash;
+        if (result == null) {
+            result = serializer.hash(getSerializedBytes());
+            hash = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the serialization of the wrapped content with the provided coding applied, e.g. gzip compressed. Each
+     * coding is only applied once, then the result is shared by all readers. If the coding does not reduce the size,
+     * the plain serialization is returned instead, which can be told by identity to getSerializedBytes().
+     *
+     * @param coding as the content coding to apply.
+     * @return the encoded serialization. The returned array is shared and must not be modified.
+     */
+    byte[] getEncodedBytes(ContentCoding coding) {
+        byte[] serializedBytes = getSerializedBytes();
+        if (coding == ContentCoding.IDENTITY)
+            return serializedBytes;
+
+        AtomicReferenceArray<byte[]> cache = encodedBytes;
+        byte[] result = cache == null ? null : cache.get(coding.ordinal());
+        if (result == null) {
+            synchronized (this) {
+                cache = encodedBytes;
+                if (cache == null) {
+                    cache = new AtomicReferenceArray<>(ContentCoding.values().length);
+                    encodedBytes = cache;
+                }
+                result = cache.get(coding.ordinal());
+                if (result == null) {
+                    result = coding.encode(serializedBytes);
+                    if (result.length >= serializedBytes.length)
+                        result = serializedBytes;
+                    cache.set(coding.ordinal(), result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the serialization of the wrapped content in an additional format, e.g. CBOR. The content is serialized
+     * once per format, then the result is shared by all readers.
+     *
+     * @param format as the format to serialize to.
+     * @return the serialization. The returned array is shared and must not be modified.
+     */
+    byte[] getFormattedBytes(ContentFormat format) {
+        Map<ContentFormat, byte[]> cache = formattedBytes;
+        if (cache == null) {
+            synchronized (this) {
+                cache = formattedBytes;
+                if (cache == null) {
+                    cache = new ConcurrentHashMap<>(4);
+                    formattedBytes = cache;
+                }
+            }
+        }
+        return cache.computeIfAbsent(format, key -> key.serialize(content));
+    }
+}
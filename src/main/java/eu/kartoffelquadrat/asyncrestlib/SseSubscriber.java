@@ -0,0 +1,186 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a persistent Server-Sent Events stream. Unlike an UpdateWaiter, a subscriber is not done after the first
+ * relevant update, but pushes every relevant state as event and keeps listening. Relevance follows the hash semantics
+ * of long-poll requests: a (transformed) state is pushed if its hash differs from the hash of the last pushed state (or
+ * the hash initially provided by the client). Every event carries the content version as event id. Events are handed to
+ * an EventSink, which is backed by an SseEmitter (servlet stack) or a reactive stream.
+ * <p>
+ * Updates published back to back may all have happened by the time the subscriber is evaluated. If the manager still
+ * retains the intermediate states (see setHistoryCapacity), each of them is evaluated and pushed in version order.
+ * Otherwise they are collapsed into the current state, like for a long-poll client that reconnects after a burst.
+ *
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @author Maximilian Schiedermeier
+ */
+class SseSubscriber<C extends BroadcastContent> implements UpdateListener {
+
+    private final BroadcastContentManager<C> broadcastContentManager;
+    private final Transformer<C> transformer;
+    private final String transformTag;
+    private final Object viewKey;
+    private final boolean skipEmptyContent;
+    private final EventSink sink;
+    // newest version evaluated so far. Older or equal versions are not evaluated again.
+    private long lastVersion;
+    // hash of the state last pushed to (or initially held by) the client. Null if unknown.
+    private String lastHash;
+    private volatile boolean done = false;
+    // set after the synchronous first evaluation, so only pushes caused by an update count towards delivery latency.
+    private boolean listening = false;
+
+    /**
+     * Constructor to set the parameters required to infer whether an internal state change is relevant.
+     *
+     * @param broadcastContentManager as the entity holding the observed state
+     * @param clientContentHashString as the hash of the current client state. If null, only future states are pushed
+     *                                and empty (transformed) states are not skipped. Otherwise the current state is
+     *                                pushed right away, unless it matches the hash.
+     * @param transformer             as the transformer to apply on arising new states.
+     * @param transformTag            as an optional transformer parameter to customize the transformation to be
+     *                                applied.
+     * @param sink                    as the stream the events are pushed to.
+     */
+    SseSubscriber(BroadcastContentManager<C> broadcastContentManager, String clientContentHashString,
+                  Transformer<C> transformer, String transformTag, EventSink sink) {
+        this.broadcastContentManager = broadcastContentManager;
+        this.transformer = transformer;
+        this.transformTag = transformTag;
+        this.viewKey = ContentSnapshot.viewKey(transformer, transformTag);
+        this.sink = sink;
+        this.lastHash = clientContentHashString;
+        this.skipEmptyContent = clientContentHashString != null;
+        this.lastVersion = clientContentHashString == null ? broadcastContentManager.getCurrentSnapshot().getVersion()
+                : 0;
+    }
+
+    @Override
+    public Object getViewKey() {
+        return viewKey;
+    }
+
+    /**
+     * Evaluates the current state of the observed BroadcastContentManager and pushes it as event, if relevant.
+     * Completes the stream if the manager was terminated. Synchronized, for consecutive updates may be evaluated by
+     * different dispatcher threads.
+     *
+     * @return true if the stream is closed, false if it keeps listening.
+     */
+    @Override
+    public synchronized boolean notifyUpdate() {
+        if (done)
+            return true;
+
+        // No more updates to come. Closing the stream tells the client.
+        if (broadcastContentManager.isTerminated()) {
+            done = true;
+            sink.complete();
+            return true;
+        }
+
+        boolean caughtUpdate = listening;
+        listening = true;
+        ContentSnapshot<C> current = broadcastContentManager.getCurrentSnapshot();
+        if (current.getVersion() <= lastVersion)
+            return false;
+
+        // States published since the last evaluation are pushed one by one, as long as the manager retains them. The
+        // first evaluation only considers the current state.
+        List<ContentSnapshot<C>> snapshots = caughtUpdate ? broadcastContentManager.getSnapshotsSince(lastVersion)
+                : null;
+        if (snapshots == null || snapshots.isEmpty())
+            snapshots = Collections.singletonList(current);
+        for (ContentSnapshot<C> snapshot : snapshots) {
+            if (!push(snapshot, caughtUpdate)) {
+                // The client is gone or the stream was completed elsewhere.
+                done = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pushes a single state as event, if relevant. Caller must hold the lock of this subscriber.
+     *
+     * @param snapshot     as the state to evaluate.
+     * @param caughtUpdate as whether the state results from an update, rather than the synchronous first evaluation.
+     * @return false if the event could not be sent, true otherwise.
+     */
+    private boolean push(ContentSnapshot<C> snapshot, boolean caughtUpdate) {
+        if (snapshot.getVersion() <= lastVersion)
+            return true;
+        lastVersion = snapshot.getVersion();
+        SerializedContent<C> connectionSpecificContent = snapshot.view(transformer, transformTag);
+        if (skipEmptyContent && connectionSpecificContent.isEmpty())
+            return true;
+        if (connectionSpecificContent.getHash().equals(lastHash))
+            return true;
+
+        try {
+            sink.send(snapshot.getVersion(), connectionSpecificContent.getSerialized());
+            lastHash = connectionSpecificContent.getHash();
+            if (caughtUpdate && snapshot.hasPublicationTime())
+                broadcastContentManager.getMetrics().delivered(snapshot.getPublicationTime());
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Marks the stream as closed, e.g. on timeout or client disconnect. No further events are pushed.
+     */
+    void cancel() {
+        done = true;
+    }
+
+    /**
+     * Creates an EventSink that pushes events to an SseEmitter.
+     *
+     * @param emitter as the servlet stack event stream.
+     * @return the sink.
+     */
+    static EventSink emitterSink(SseEmitter emitter) {
+        return new EventSink() {
+            @Override
+            public void send(long version, String serializedContent) throws IOException {
+                emitter.send(SseEmitter.event().id(String.valueOf(version))
+                        .data(serializedContent, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void complete() {
+                emitter.complete();
+            }
+        };
+    }
+
+    /**
+     * Target of the events pushed by a subscriber.
+     */
+    interface EventSink {
+
+        /**
+         * Pushes a single event.
+         *
+         * @param version           as the content version, used as event id.
+         * @param serializedContent as the json serialization of the (transformed) content, used as event data.
+         * @throws IOException if the client is gone.
+         */
+        void send(long version, String serializedContent) throws IOException;
+
+        /**
+         * Closes the stream, for no further events are to be expected.
+         */
+        void complete();
+    }
+}
@@ -0,0 +1,21 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+/**
+ * Tells how a BroadcastContentManager decides whether a content update is an actual change.
+ *
+ * @author Maximilian Schiedermeier
+ */
+public enum SyncMode {
+
+    /**
+     * Default mode. Updates are serialized and hashed, updates identical by hash to the current content are rejected.
+     * Suitable for clients that rely on content-equality semantics, e.g. hash-based updates.
+     */
+    HASH,
+
+    /**
+     * Every non-empty update is accepted and assigned a new version, without serialization or hashing. Suitable for
+     * clients that use version-based updates. Hashes are still computed lazily if requested.
+     */
+    VERSION
+}
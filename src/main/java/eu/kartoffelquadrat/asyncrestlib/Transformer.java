@@ -7,6 +7,8 @@ package eu.kartoffelquadrat.asyncrestlib;
  * "allcaps" (to a corresponding to-uppercase-manipulating transformer). If such tag is recognized by the transformer,
  * the ResponseGenerator can then transform all characters within a BroadcastContent to uppercase for customized
  * results, before checking against the client provided state-hash.
+ * Transformations must be deterministic: the outcome for a given content and tag is computed once per content version
+ * and then shared by all subscribers using the same transformer instance and tag.
  *
  * @author Maximilian Schiedermeier
  */
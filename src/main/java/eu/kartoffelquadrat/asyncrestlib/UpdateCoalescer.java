@@ -0,0 +1,184 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Withholds the updates of a BroadcastContentManager according to a CoalescingPolicy. Only the latest pending update is
+ * kept. It is published by the manager once the coalescing window closes, either on the producer thread (if the window
+ * is already closed) or on the timer thread. Updates that are replaced by a later update before being published are
+ * counted as coalesced. Only producers synchronize on the coalescer, readers of the manager are not affected. Once the
+ * manager terminates, the coalescer publishes the pending update and rejects all further updates, so nothing is left
+ * to be published on the timer thread, where a failure would go unnoticed.
+ *
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @author Maximilian Schiedermeier
+ */
+class UpdateCoalescer<C extends BroadcastContent> {
+
+    private final BroadcastContentManager<C> broadcastContentManager;
+    private final CoalescingPolicy policy;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong coalescedUpdateCount;
+
+    // latest pending content update, null if there is none.
+    private SerializedContent<C> pendingUpdate;
+    // whether a touch is pending. A touch is merged into a pending content update.
+    private boolean pendingTouch;
+    // nano time of the first pending update of the current window.
+    private long windowStart;
+    // nano time of the last publication.
+    private long lastPublication;
+    // the scheduled publication of the pending update and its nano time deadline. Null if nothing is scheduled.
+    private ScheduledFuture<?> scheduledPublication;
+    private long scheduledDeadline;
+    // set when the manager terminates. No update is accepted afterwards.
+    private boolean terminated;
+
+    /**
+     * @param broadcastContentManager as the manager that publishes the coalesced updates.
+     * @param policy                  as the rules that define the coalescing window.
+     * @param timer                   as the executor that publishes updates once the window closes.
+     * @param coalescedUpdateCount    as the counter of updates that were replaced before being published.
+     */
+    UpdateCoalescer(BroadcastContentManager<C> broadcastContentManager, CoalescingPolicy policy,
+                    ScheduledExecutorService timer, AtomicLong coalescedUpdateCount) {
+        this.broadcastContentManager = broadcastContentManager;
+        this.policy = policy;
+        this.timer = timer;
+        this.coalescedUpdateCount = coalescedUpdateCount;
+        this.lastPublication = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(policy.getMinIntervalMillis());
+    }
+
+    CoalescingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Withholds a content update until the coalescing window closes. Replaces any pending update.
+     *
+     * @param update as the serialized content update.
+     */
+    synchronized void offerUpdate(SerializedContent<C> update) {
+        rejectIfTerminated();
+        if (hasPending())
+            coalescedUpdateCount.incrementAndGet();
+        pendingUpdate = update;
+        pendingTouch = false;
+        schedulePublication();
+    }
+
+    /**
+     * Withholds a touch until the coalescing window closes. A touch is merged into a pending content update, if any.
+     */
+    synchronized void offerTouch() {
+        rejectIfTerminated();
+        if (hasPending())
+            coalescedUpdateCount.incrementAndGet();
+        if (pendingUpdate == null)
+            pendingTouch = true;
+        schedulePublication();
+    }
+
+    /**
+     * Publishes the pending update right away, if any, e.g. before the manager is terminated or the policy is replaced.
+     */
+    synchronized void publishNow() {
+        cancelScheduledPublication();
+        publish();
+    }
+
+    /**
+     * Publishes the pending update right away, if any, then cancels any scheduled publication for good. Invoked before
+     * the manager is terminated. Producers that passed the termination check of the manager before it terminated are
+     * rejected here, rather than on the timer thread.
+     */
+    synchronized void terminate() {
+        publishNow();
+        terminated = true;
+    }
+
+    private void rejectIfTerminated() {
+        if (terminated)
+            throw new RuntimeException("Content can not be updated any more. The broadcast manager is already " +
+                    "terminated.");
+    }
+
+    private boolean hasPending() {
+        return pendingUpdate != null || pendingTouch;
+    }
+
+    /**
+     * Computes the end of the current window and publishes the pending update once it is reached. A debounce deadline
+     * moves with every update, capped by the maximum latency. The minimum interval may move the deadline further.
+     */
+    private void schedulePublication() {
+        long now = System.nanoTime();
+        if (scheduledPublication == null)
+            windowStart = now;
+
+        long deadline = now;
+        if (policy.getQuietPeriodMillis() > 0) {
+            deadline = now + TimeUnit.MILLISECONDS.toNanos(policy.getQuietPeriodMillis());
+            long latestDeadline = windowStart + TimeUnit.MILLISECONDS.toNanos(policy.getMaxLatencyMillis());
+            if (deadline - latestDeadline > 0)
+                deadline = latestDeadline;
+        }
+        long earliestDeadline = lastPublication + TimeUnit.MILLISECONDS.toNanos(policy.getMinIntervalMillis());
+        if (earliestDeadline - deadline > 0)
+            deadline = earliestDeadline;
+
+        // The window is already closed, publish on the producer thread.
+        if (deadline - now <= 0) {
+            cancelScheduledPublication();
+            publish();
+            return;
+        }
+
+        if (scheduledPublication != null && scheduledDeadline == deadline)
+            return;
+        cancelScheduledPublication();
+        scheduledDeadline = deadline;
+        scheduledPublication = timer.schedule(this::publishIfDue, deadline - now, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Invoked by the timer. Publishes the pending update, unless the deadline was moved in the meantime.
+     */
+    private synchronized void publishIfDue() {
+        if (terminated || scheduledPublication == null || System.nanoTime() - scheduledDeadline < 0)
+            return;
+        scheduledPublication = null;
+        publish();
+    }
+
+    private void cancelScheduledPublication() {
+        if (scheduledPublication != null) {
+            scheduledPublication.cancel(false);
+            scheduledPublication = null;
+        }
+    }
+
+    /**
+     * Hands the pending update to the manager. Runs while holding the coalescer lock, so publications keep the order of
+     * the updates.
+     */
+    private void publish() {
+        if (!hasPending())
+            return;
+        SerializedContent<C> update = pendingUpdate;
+        boolean touch = pendingTouch;
+        pendingUpdate = null;
+        pendingTouch = false;
+        lastPublication = System.nanoTime();
+
+        if (broadcastContentManager.isTerminated())
+            return;
+        if (update != null)
+            broadcastContentManager.publishUpdate(update);
+        else if (touch)
+            broadcastContentManager.publishTouch();
+    }
+}
@@ -0,0 +1,38 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+/**
+ * Common interface of everything that observes the content of a BroadcastContentManager on behalf of a client, that is
+ * one-shot long-poll requests (UpdateWaiter) and persistent streams (SseSubscriber). Listeners are either evaluated
+ * by an AsyncNotifyTask or by the dispatcher of an event-driven BroadcastContentManager.
+ *
+ * @author Maximilian Schiedermeier
+ */
+interface UpdateListener {
+
+    /**
+     * Evaluates the current state of the observed BroadcastContentManager and delivers it to the client, if relevant.
+     *
+     * @return true if this listener is done and must not be evaluated any more, false if it keeps listening.
+     */
+    boolean notifyUpdate();
+
+    /**
+     * Returns the key of the content view delivered by this listener, see ContentSnapshot.viewKey. Listeners with equal
+     * keys are evaluated together by parallel fan-outs.
+     *
+     * @return the view key, or null if the listener does not observe a single view.
+     */
+    default Object getViewKey() {
+        return null;
+    }
+
+    /**
+     * Tells whether every registration of this listener at a manager counts as pending request towards the global
+     * limit of AdmissionControl. Listeners registered at several managers at once count themselves, exactly once.
+     *
+     * @return true if the managers count this listener, false if it counts itself.
+     */
+    default boolean isCountedByManager() {
+        return true;
+    }
+}
@@ -0,0 +1,301 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a single pending long-poll request. The waiter holds everything needed to infer whether a state of the
+ * observed BroadcastContentManager is relevant to the subscribing client, and completes the deferred http reply if so.
+ * A waiter does not own a thread. It is either evaluated by an AsyncNotifyTask (thread per request) or directly by
+ * the dispatcher of a BroadcastContentManager (event-driven notification). The very same evaluation also serves as
+ * synchronous check, right when the request arrives.
+ * <p>
+ * The client state is described either by a hash or by a version. If a hash is provided, a state is relevant if its
+ * (transformed) hash differs. Otherwise a state is relevant if its version is newer than the client version.
+ * Catch-up waiters reply with all retained versions since the client version, delta waiters with a merge patch from the
+ * client version, rather than only with the current content.
+ *
+ * @param <C> as the user provided BroadcastContent extension to this library.
+ * @param <B> as the body type of the reply, see ReplyBody.
+ * @author Maximilian Schiedermeier
+ */
+class UpdateWaiter<C extends BroadcastContent, B> implements UpdateListener {
+
+    private final BroadcastContentManager<C> broadcastContentManager;
+    private final String clientContentHashString;
+    private final long clientContentVersion;
+    private final boolean skipEmptyContent;
+    private final Transformer<C> transformer;
+    private final String transformTag;
+    private final Object viewKey;
+    private final Reply reply;
+    private final ReplyBody<B> replyBody;
+    private final DeferredResult<ResponseEntity<B>> deferredResult;
+    // set once an evaluation found no relevant state, so later replies count as deferred rather than immediate.
+    private volatile boolean deferred;
+
+    /**
+     * Constructor to set the parameters required infere whether an internal state change is relevant and to update the
+     * deferred result object. Use one of the static factory methods.
+     *
+     * @param broadcastContentManager as the entity holding the observed state
+     * @param clientContentHashString as the hash of the current client state. Null if the client state is described
+     *                                by a version.
+     * @param clientContentVersion    as the content version held by the client. Ignored if a hash is provided.
+     * @param skipEmptyContent        as a flag to tell whether empty (transformed) content is never considered
+     *                                relevant.
+     * @param transformer             as the transformer to apply on arising new states.
+     * @param transformTag            as an optional transformer parameter to customize the transformation to be
+     *                                applied.
+     * @param reply                   as the kind of reply sent on a relevant update.
+     * @param replyBody               as the representation of the reply body.
+     * @param deferredResult          as the result object that is completed upon the first relevant status change
+     */
+    private UpdateWaiter(BroadcastContentManager<C> broadcastContentManager, String clientContentHashString,
+                         long clientContentVersion, boolean skipEmptyContent, Transformer<C> transformer,
+                         String transformTag, Reply reply, ReplyBody<B> replyBody,
+                         DeferredResult<ResponseEntity<B>> deferredResult) {
+        this.broadcastContentManager = broadcastContentManager;
+        this.clientContentHashString = clientContentHashString;
+        this.clientContentVersion = clientContentVersion;
+        this.skipEmptyContent = skipEmptyContent;
+        this.transformer = transformer;
+        this.transformTag = transformTag;
+        this.viewKey = ContentSnapshot.viewKey(transformer, transformTag);
+        this.reply = reply;
+        this.replyBody = replyBody;
+        this.deferredResult = deferredResult;
+    }
+
+    /**
+     * Creates a waiter for a client that did not provide any state. The client is notified about the next content
+     * change, even if the (transformed) content is empty.
+     *
+     * @param baseVersion as the content version that was current when the request arrived.
+     */
+    static <C extends BroadcastContent, B> UpdateWaiter<C, B> forNextUpdate(
+            BroadcastContentManager<C> manager, long baseVersion, Transformer<C> transformer, String transformTag,
+            ReplyBody<B> body, DeferredResult<ResponseEntity<B>> result) {
+        return new UpdateWaiter<>(manager, null, baseVersion, false, transformer, transformTag, Reply.CONTENT, body,
+                result);
+    }
+
+    /**
+     * Creates a waiter for a client that provided the hash of its current state. The client is notified as soon as the
+     * (transformed) content is not empty and differs in hash. An empty hash never matches.
+     *
+     * @param clientContentHashString as the hash of the current client state. Must not be null.
+     */
+    static <C extends BroadcastContent, B> UpdateWaiter<C, B> forHash(
+            BroadcastContentManager<C> manager, String clientContentHashString, Transformer<C> transformer,
+            String transformTag, ReplyBody<B> body, DeferredResult<ResponseEntity<B>> result) {
+        return new UpdateWaiter<>(manager, clientContentHashString, 0, true, transformer, transformTag,
+                Reply.CONTENT, body, result);
+    }
+
+    /**
+     * Creates a waiter for a client that provided the version of its current state. The client is notified as soon as
+     * the content version is newer than the client version and the (transformed) content is not empty.
+     *
+     * @param clientContentVersion as the content version held by the client.
+     */
+    static <C extends BroadcastContent, B> UpdateWaiter<C, B> forVersion(
+            BroadcastContentManager<C> manager, long clientContentVersion, Transformer<C> transformer,
+            String transformTag, ReplyBody<B> body, DeferredResult<ResponseEntity<B>> result) {
+        return new UpdateWaiter<>(manager, null, clientContentVersion, true, transformer, transformTag,
+                Reply.CONTENT, body, result);
+    }
+
+    /**
+     * Creates a waiter for a client that wants to catch up on every version since the one it holds. The client is
+     * notified as soon as the content version is newer than the client version. The reply lists all retained versions
+     * since the client version, or only the current one (flagged as resync) if some of them are no longer retained.
+     *
+     * @param clientContentVersion as the content version held by the client.
+     */
+    static <C extends BroadcastContent, B> UpdateWaiter<C, B> forCatchUp(
+            BroadcastContentManager<C> manager, long clientContentVersion, ReplyBody<B> body,
+            DeferredResult<ResponseEntity<B>> result) {
+        return new UpdateWaiter<>(manager, null, clientContentVersion, false, new IdentityTransformer<>(), null,
+                Reply.CATCH_UP, body, result);
+    }
+
+    /**
+     * Creates a waiter for a client that wants a delta from the version it holds. The client is notified as soon as the
+     * content version is newer than the client version. The reply is a merge patch from the client version to the
+     * current version, if the client version is still retained and the patch is smaller than the full content.
+     * Otherwise the reply is the full content.
+     *
+     * @param clientContentVersion as the content version held by the client.
+     */
+    static <C extends BroadcastContent, B> UpdateWaiter<C, B> forDelta(
+            BroadcastContentManager<C> manager, long clientContentVersion, ReplyBody<B> body,
+            DeferredResult<ResponseEntity<B>> result) {
+        return new UpdateWaiter<>(manager, null, clientContentVersion, false, new IdentityTransformer<>(), null,
+                Reply.DELTA, body, result);
+    }
+
+    @Override
+    public Object getViewKey() {
+        return viewKey;
+    }
+
+    /**
+     * Evaluates the current state of the observed BroadcastContentManager. Sets the deferred result if either the
+     * manager was terminated (204) or the current state is relevant to the client (200).
+     *
+     * @return true if this waiter is done (result set or already expired), false if it has to keep waiting.
+     */
+    @Override
+    public boolean notifyUpdate() {
+
+        // Nothing to do any more if the result was already set elsewhere, e.g. by the timeout handler.
+        if (deferredResult.isSetOrExpired())
+            return true;
+
+        // If there is no content update, but the server closed the connection:
+        if (broadcastContentManager.isTerminated()) {
+            if (deferredResult.setErrorResult(ResponseEntity.noContent().build()))
+                broadcastContentManager.getMetrics().terminated(204);
+            return true;
+        }
+
+        // The connection specific view is evaluated on the current snapshot, so serialization and hash are shared
+        // with all other waiters. Version comparison comes first, for it does not require any transformation. A client
+        // version above the current one stems from an earlier manager of the resource (e.g. before a restart), so
+        // the client is outdated as well.
+        ContentSnapshot<C> snapshot = broadcastContentManager.getCurrentSnapshot();
+        if (clientContentHashString == null && snapshot.getVersion() == clientContentVersion)
+            return keepWaiting();
+        if (reply == Reply.CATCH_UP) {
+            replyWithSnapshotsSince(snapshot);
+            return true;
+        }
+        if (reply == Reply.DELTA && replyWithMergePatch(snapshot))
+            return true;
+        SerializedContent<C> connectionSpecificContent = snapshot.view(transformer, transformTag);
+        if (skipEmptyContent && connectionSpecificContent.isEmpty())
+            return keepWaiting();
+        if (clientContentHashString != null && clientContentHashString.equals(connectionSpecificContent.getHash()))
+            return keepWaiting();
+
+        // Note that ResponseEntity does not support proper json serialization of custom objects out of the box.
+        // Therefore the payload is a JSON string that we created with the manager's serializer.
+        complete(snapshot, replyBody.content(ResponseGenerator.withRepollHint(ResponseEntity.ok(),
+                broadcastContentManager)
+                .header(ResponseGenerator.VERSION_HEADER, String.valueOf(snapshot.getVersion())),
+                connectionSpecificContent));
+        return true;
+    }
+
+    private boolean keepWaiting() {
+        deferred = true;
+        return false;
+    }
+
+    /**
+     * Completes the deferred result with a 200 (OK) reply and reports the reply to the metrics of the manager.
+     *
+     * @param snapshot as the snapshot the reply is based on.
+     * @param reply    as the reply.
+     */
+    private void complete(ContentSnapshot<C> snapshot, ResponseEntity<B> reply) {
+        if (!deferredResult.setResult(reply))
+            return;
+        ManagerMetrics metrics = broadcastContentManager.getMetrics();
+        metrics.replied(deferred);
+        if (deferred && snapshot.hasPublicationTime())
+            metrics.delivered(snapshot.getPublicationTime());
+    }
+
+    /**
+     * Completes the deferred result with a merge patch from the client version to the provided snapshot, if possible.
+     *
+     * @param snapshot as the current snapshot.
+     * @return true if the result was completed, false if the client has to receive the full content instead.
+     */
+    private boolean replyWithMergePatch(ContentSnapshot<C> snapshot) {
+        ContentSnapshot<C> base = broadcastContentManager.getRetainedSnapshot(clientContentVersion);
+        if (base == null)
+            return false;
+        String patch = snapshot.mergePatchFrom(base);
+        if (patch == null)
+            return false;
+
+        complete(snapshot, replyBody.text(ResponseGenerator.withRepollHint(ResponseEntity.ok(),
+                broadcastContentManager)
+                .contentType(MediaType.parseMediaType(MergePatch.MEDIA_TYPE))
+                .header(ResponseGenerator.VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                .header(ResponseGenerator.DELTA_BASE_HEADER, String.valueOf(base.getVersion())), patch));
+        return true;
+    }
+
+    /**
+     * Completes the deferred result with a JSON array of all retained versions since the client version, each entry
+     * carrying the version and the content. Entries are composed of the shared serializations of the snapshots, no
+     * content is serialized again. If intermediate versions are no longer retained, the array only holds the provided
+     * current snapshot and the reply is flagged as resync.
+     *
+     * @param currentSnapshot as the current snapshot, the fallback if the history does not cover the client version.
+     */
+    private void replyWithSnapshotsSince(ContentSnapshot<C> currentSnapshot) {
+        List<ContentSnapshot<C>> snapshots = clientContentVersion < currentSnapshot.getVersion()
+                ? broadcastContentManager.getSnapshotsSince(clientContentVersion) : null;
+
+        // A snapshot that was published just now might not be retained yet. It is only listed if no version is
+        // missing in between.
+        if (snapshots != null) {
+            long newestVersion = snapshots.isEmpty() ? clientContentVersion
+                    : snapshots.get(snapshots.size() - 1).getVersion();
+            if (newestVersion + 1 == currentSnapshot.getVersion())
+                snapshots.add(currentSnapshot);
+            else if (newestVersion < currentSnapshot.getVersion())
+                snapshots = null;
+        }
+        boolean resync = snapshots == null;
+        if (resync)
+            snapshots = Collections.singletonList(currentSnapshot);
+
+        // The body is composed from the shared UTF-8 serializations, so no content is encoded again.
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (ContentSnapshot<C> snapshot : snapshots) {
+            if (body.size() > 1)
+                body.write(',');
+            writeAscii(body, "{\"version\":" + snapshot.getVersion() + ",\"content\":");
+            byte[] serializedBytes = snapshot.getSerializedContent().getSerializedBytes();
+            body.write(serializedBytes, 0, serializedBytes.length);
+            body.write('}');
+        }
+        body.write(']');
+
+        complete(currentSnapshot, replyBody.bytes(ResponseGenerator.withRepollHint(ResponseEntity.ok(),
+                broadcastContentManager)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(ResponseGenerator.VERSION_HEADER,
+                        String.valueOf(snapshots.get(snapshots.size() - 1).getVersion()))
+                .header(ResponseGenerator.RESYNC_HEADER, String.valueOf(resync)), body.toByteArray()));
+    }
+
+    private static void writeAscii(ByteArrayOutputStream target, String text) {
+        for (int i = 0; i < text.length(); i++)
+            target.write(text.charAt(i));
+    }
+
+    /**
+     * Kinds of replies to a relevant update.
+     */
+    enum Reply {
+        // the current (transformed) content.
+        CONTENT,
+        // all retained versions since the client version.
+        CATCH_UP,
+        // a merge patch from the client version, if possible, otherwise the current content.
+        DELTA
+    }
+}
@@ -0,0 +1,25 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the default factory for the threads that run AsyncNotifyTask wait loops. This is the Java 21+ variant of
+ * the class, packaged into the multi-release section of the library jar. Pending requests are parked on virtual
+ * threads, so the latch-based wait loop does not occupy an OS thread per request.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class NotifyThreadFactories {
+
+    private NotifyThreadFactories() {
+    }
+
+    /**
+     * Returns the runtime specific default thread factory.
+     *
+     * @return a factory that creates one virtual thread per pending request.
+     */
+    static ThreadFactory defaultFactory() {
+        return Thread.ofVirtual().name("arl-notify-", 0).factory();
+    }
+}
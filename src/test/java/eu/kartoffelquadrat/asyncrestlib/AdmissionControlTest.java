@@ -0,0 +1,147 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the rejection of pending requests beyond the per-manager and global limits.
+ */
+public class AdmissionControlTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        bcm.enableEventDrivenNotification();
+    }
+
+    @After
+    public void restoreGlobalLimit() {
+        AdmissionControl.setGlobalLimit(AdmissionControl.UNLIMITED);
+    }
+
+    /**
+     * Requests beyond the manager limit are rejected with 503 and a Retry-After within one long-poll timeout.
+     */
+    @Test
+    public void rejectBeyondManagerLimit() {
+        bcm.setMaxPendingWaiters(2);
+        DeferredResult<ResponseEntity<String>> first = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        DeferredResult<ResponseEntity<String>> second = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        assertFalse(first.hasResult() || second.hasResult());
+        assertTrue(bcm.isSaturated());
+
+        ResponseEntity<?> rejection = (ResponseEntity<?>) ResponseGenerator.getAsyncUpdate(timeout, bcm).getResult();
+        assertEquals(503, rejection.getStatusCodeValue());
+        long retryAfter = Long.parseLong(rejection.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertTrue(retryAfter >= 1 && retryAfter <= timeout / 1000);
+        assertEquals(2, bcm.getPendingWaiterCount());
+
+        // once released, requests are admitted again
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> bcm.getPendingWaiterCount() == 0);
+        assertFalse(bcm.isSaturated());
+        assertFalse(ResponseGenerator.getAsyncUpdate(timeout, bcm).hasResult());
+    }
+
+    /**
+     * A saturated manager still answers requests that do not have to wait.
+     */
+    @Test
+    public void serveSynchronousRepliesWhenSaturated() {
+        bcm.setMaxPendingWaiters(1);
+        ResponseGenerator.getAsyncUpdate(timeout, bcm);
+
+        ResponseEntity<?> reply = (ResponseEntity<?>) ResponseGenerator.getHashBasedUpdate(timeout, bcm, "outdated")
+                .getResult();
+        assertEquals(200, reply.getStatusCodeValue());
+    }
+
+    /**
+     * The global limit applies to all managers together, also to threads that block on behalf of a request.
+     */
+    @Test
+    public void rejectBeyondGlobalLimit() {
+        BroadcastContentManager<StringBroadcastContent> threadedBcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        AdmissionControl.setGlobalLimit((int) AdmissionControl.getPendingWaiterCount() + 2);
+
+        ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        ResponseGenerator.getAsyncUpdate(timeout, threadedBcm);
+        assertTrue(AdmissionControl.isSaturated());
+        assertEquals(503, AdmissionControl.getAdmissionStatus().getStatusCodeValue());
+
+        ResponseEntity<?> rejection = (ResponseEntity<?>) ResponseGenerator.getAsyncUpdate(timeout, threadedBcm)
+                .getResult();
+        assertEquals(503, rejection.getStatusCodeValue());
+
+        threadedBcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> !AdmissionControl.isSaturated());
+        assertEquals(200, AdmissionControl.getAdmissionStatus().getStatusCodeValue());
+    }
+
+    /**
+     * Multiplexed requests are rejected if any observed manager is saturated.
+     */
+    @Test
+    public void rejectMultiplexedRequest() {
+        bcm.setMaxPendingWaiters(1);
+        ResponseGenerator.getAsyncUpdate(timeout, bcm);
+
+        ResponseEntity<?> rejection = (ResponseEntity<?>) ResponseGenerator.getMultiplexedVersionBasedUpdate(timeout,
+                Collections.singletonMap("chat", bcm), Collections.singletonMap("chat", bcm.getContentVersion()))
+                .getResult();
+        assertEquals(503, rejection.getStatusCodeValue());
+    }
+
+    /**
+     * A multiplexed request counts once towards the global limit, but towards the limit of every observed manager.
+     */
+    @Test
+    public void countMultiplexedRequestOnce() {
+        BroadcastContentManager<StringBroadcastContent> other = new BroadcastContentManager<>(
+                new StringBroadcastContent("X"));
+        other.enableEventDrivenNotification();
+        Map<String, BroadcastContentManager<StringBroadcastContent>> managers = new HashMap<>();
+        managers.put("chat", bcm);
+        managers.put("lobby", other);
+        Map<String, Long> versions = new HashMap<>();
+        versions.put("chat", bcm.getContentVersion());
+        versions.put("lobby", other.getContentVersion());
+
+        long pendingBefore = AdmissionControl.getPendingWaiterCount();
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getMultiplexedVersionBasedUpdate(timeout,
+                managers, versions);
+        assertFalse(result.hasResult());
+        assertEquals(pendingBefore + 1, AdmissionControl.getPendingWaiterCount());
+        assertEquals(1, bcm.getPendingWaiterCount());
+        assertEquals(1, other.getPendingWaiterCount());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        await().atMost(Duration.ofMillis(500)).until(() -> AdmissionControl.getPendingWaiterCount() == pendingBefore);
+        assertEquals(0, bcm.getPendingWaiterCount());
+        assertEquals(0, other.getPendingWaiterCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidLimit() {
+        bcm.setMaxPendingWaiters(0);
+    }
+}
@@ -0,0 +1,111 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the streaming hash computation of the BroadcastContentHasher and the supported hash algorithms.
+ */
+public class BroadcastContentHasherTest {
+
+    private final ObjectWriter serializer = new ObjectMapper().writer();
+
+    /**
+     * Streamed MD5 hashes must be identical to the MD5 of the JSON string, as computed by clients.
+     */
+    @Test
+    public void streamedMd5MatchesStringMd5() throws JsonProcessingException {
+        StringBroadcastContent content = new StringBroadcastContent("abc123 äöü ☃");
+        assertEquals(DigestUtils.md5Hex(serializer.writeValueAsString(content)),
+                BroadcastContentHasher.hash(serializer, content));
+    }
+
+    /**
+     * Verify the Murmur3 implementation against reference values of the 128 bit x64 variant.
+     */
+    @Test
+    public void murmur3ReferenceValues() {
+        assertEquals("00000000000000000000000000000000", murmur3(""));
+        assertEquals("029bbd41b3a7d8cb191dae486a901e5b", murmur3("hello"));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a",
+                murmur3("The quick brown fox jumps over the lazy dog"));
+    }
+
+    /**
+     * The hash must not depend on how the serialization is chunked when written to the stream.
+     */
+    @Test
+    public void murmur3IndependentOfChunking() {
+        byte[] input = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJ".getBytes(StandardCharsets.UTF_8);
+        String expected = BroadcastContentHasher.hashSerialized(input, HashAlgorithm.MURMUR3_128);
+        for (int chunkSize = 1; chunkSize < input.length; chunkSize++) {
+            HashingOutputStream stream = HashAlgorithm.MURMUR3_128.threadLocalStream();
+            for (int offset = 0; offset < input.length; offset += chunkSize)
+                stream.write(input, offset, Math.min(chunkSize, input.length - offset));
+            assertEquals(expected, stream.hexDigest());
+        }
+    }
+
+    /**
+     * The manager must apply the configured algorithm to content hashes.
+     */
+    @Test
+    public void managerUsesConfiguredAlgorithm() throws JsonProcessingException {
+        StringBroadcastContent content = new StringBroadcastContent("abc123");
+        BroadcastContentManager<StringBroadcastContent> bcm = new BroadcastContentManager<>(content);
+        bcm.setHashAlgorithm(HashAlgorithm.MURMUR3_128);
+        assertEquals(murmur3(serializer.writeValueAsString(content)), bcm.getContentHash());
+        assertEquals(bcm.getContentHash(), bcm.getHashOfCustomContentUsingAssociatedSerializer(content));
+    }
+
+    /**
+     * A serialization that fails with an unchecked throwable after partial output must not affect the next hash
+     * computed on the same thread. Jackson wraps exceptions, but not errors.
+     */
+    @Test
+    public void failedSerializationLeavesNoPartialState() throws JsonProcessingException {
+        try {
+            BroadcastContentHasher.hash(serializer, new FailingBroadcastContent());
+        } catch (AssertionError expected) {
+            // the first property exceeds the generator buffer, so it already reached the thread's hashing stream
+        }
+
+        StringBroadcastContent content = new StringBroadcastContent("abc123");
+        assertEquals(DigestUtils.md5Hex(serializer.writeValueAsString(content)),
+                BroadcastContentHasher.hash(serializer, content));
+    }
+
+    private static String murmur3(String input) {
+        return BroadcastContentHasher.hashSerialized(input.getBytes(StandardCharsets.UTF_8),
+                HashAlgorithm.MURMUR3_128);
+    }
+
+    /**
+     * Content whose second property can not be read.
+     */
+    @JsonPropertyOrder({"first", "second"})
+    public static class FailingBroadcastContent implements BroadcastContent {
+
+        public String getFirst() {
+            return String.join("", Collections.nCopies(10000, "x"));
+        }
+
+        public String getSecond() {
+            throw new AssertionError("Property not available.");
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests lazy creation, sharing and idle eviction of managers in a BroadcastContentManagerRegistry.
+ */
+public class BroadcastContentManagerRegistryTest {
+
+    private BroadcastContentManagerRegistry<String, StringBroadcastContent> registry;
+
+    @After
+    public void closeRegistry() {
+        if (registry != null)
+            registry.close();
+    }
+
+    /**
+     * Verify managers are created on first lookup, with the initial content of their key, and then reused.
+     */
+    @Test
+    public void createLazilyOncePerKey() {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 60000);
+        assertNull(registry.getIfPresent("A"));
+
+        BroadcastContentManager<StringBroadcastContent> manager = registry.get("A");
+        assertEquals("A", manager.getCurrentBroadcastContent().getContent());
+        assertSame(manager, registry.get("A"));
+        assertSame(manager, registry.getIfPresent("A"));
+        assertNotSame(manager, registry.get("B"));
+        assertEquals(2, registry.size());
+    }
+
+    /**
+     * All managers of a registry must share a single serializer.
+     */
+    @Test
+    public void managersShareSerializer() {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 60000);
+        assertSame(registry.get("A").getImmutableSerializer(), registry.get("B").getImmutableSerializer());
+    }
+
+    /**
+     * Verify idle managers are evicted and replaced by a fresh manager on the next lookup.
+     */
+    @Test
+    public void evictIdleManagers() throws InterruptedException {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 50);
+        BroadcastContentManager<StringBroadcastContent> manager = registry.get("A");
+        manager.updateBroadcastContent(new StringBroadcastContent("B"));
+
+        Thread.sleep(100);
+        registry.evictIdle();
+        assertNull(registry.getIfPresent("A"));
+        assertEquals(0, registry.size());
+
+        BroadcastContentManager<StringBroadcastContent> recreated = registry.get("A");
+        assertNotSame(manager, recreated);
+        assertEquals("A", recreated.getCurrentBroadcastContent().getContent());
+    }
+
+    /**
+     * Versions of a recreated manager continue above the versions of the evicted one, so a client that still holds a
+     * version of the evicted manager receives the initial content right away.
+     */
+    @Test
+    public void recreatedManagerContinuesVersions() throws InterruptedException {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 50);
+        registry.close();
+        BroadcastContentManager<StringBroadcastContent> manager = registry.get("A");
+        manager.updateBroadcastContent(new StringBroadcastContent("B"));
+        manager.updateBroadcastContent(new StringBroadcastContent("C"));
+        long evictedVersion = manager.getContentVersion();
+
+        Thread.sleep(100);
+        assertEquals(1, registry.evictIdle());
+        BroadcastContentManager<StringBroadcastContent> recreated = registry.get("A");
+        assertTrue(recreated.getContentVersion() > evictedVersion);
+
+        DeferredResult<ResponseEntity<String>> result =
+                ResponseGenerator.getVersionBasedUpdate(5000, recreated, evictedVersion);
+        assertTrue(result.hasResult());
+        assertTrue(((ResponseEntity<?>) result.getResult()).getBody().toString().contains("A"));
+
+        // Removed managers are accounted for as well.
+        recreated.updateBroadcastContent(new StringBroadcastContent("D"));
+        long removedVersion = recreated.getContentVersion();
+        registry.remove("A");
+        assertTrue(registry.get("A").getContentVersion() > removedVersion);
+    }
+
+    /**
+     * Managers that were not looked up for half the idle timeout are only softly referenced, and strongly referenced
+     * again on the next lookup. Once reclaimed by the garbage collector, they are removed on the next sweep and
+     * replaced by a manager that continues their versions.
+     */
+    @Test
+    public void softenIdleManagers() throws Exception {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 2000);
+        registry.close();
+        BroadcastContentManager<StringBroadcastContent> manager = registry.get("A");
+        manager.updateBroadcastContent(new StringBroadcastContent("B"));
+        long reclaimedVersion = manager.getContentVersion();
+
+        Thread.sleep(1200);
+        assertEquals(0, registry.evictIdle());
+        assertNull(getEntryField("A", "strongManager"));
+        assertSame(manager, registry.get("A"));
+        assertSame(manager, getEntryField("A", "strongManager"));
+
+        // Soft references are only cleared under memory pressure, so the reclamation by the garbage collector is
+        // simulated once the manager is softly referenced again.
+        Thread.sleep(1200);
+        assertEquals(0, registry.evictIdle());
+        manager = null;
+        ((SoftReference<?>) getEntryField("A", "softManager")).clear();
+        assertNull(registry.getIfPresent("A"));
+        assertEquals(1, registry.evictIdle());
+        assertEquals(0, registry.size());
+
+        BroadcastContentManager<StringBroadcastContent> recreated = registry.get("A");
+        assertEquals("A", recreated.getCurrentBroadcastContent().getContent());
+        assertTrue(recreated.getContentVersion() > reclaimedVersion);
+    }
+
+    /**
+     * Idle managers are also evicted in the background.
+     */
+    @Test
+    public void evictInBackground() {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 50);
+        registry.get("A");
+        await().atMost(Duration.ofSeconds(2)).until(() -> registry.size() == 0);
+    }
+
+    /**
+     * Managers with pending requests must not be evicted, regardless of their idle time.
+     */
+    @Test
+    public void retainManagersWithWaiters() throws InterruptedException {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 50);
+        // On a cold JVM the first request may take longer than the idle timeout, so only evict explicitly.
+        registry.close();
+        registry.enableEventDrivenNotification();
+        BroadcastContentManager<StringBroadcastContent> manager = registry.get("A");
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getAsyncUpdate(5000, manager);
+
+        Thread.sleep(100);
+        assertEquals(0, registry.evictIdle());
+        assertSame(manager, registry.get("A"));
+
+        manager.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+    }
+
+    /**
+     * The shared dispatcher must be applied to existing and future managers.
+     */
+    @Test
+    public void propagateDispatcher() {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 60000);
+        BroadcastContentManager<StringBroadcastContent> existing = registry.get("A");
+        registry.enableEventDrivenNotification();
+        assertTrue(existing.isEventDriven());
+        assertTrue(registry.get("B").isEventDriven());
+    }
+
+    /**
+     * Concurrent lookups of the same key must all obtain the same manager.
+     */
+    @Test
+    public void concurrentLookupsCreateSingleManager() throws Exception {
+        registry = new BroadcastContentManagerRegistry<>(StringBroadcastContent::new, 60000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<BroadcastContentManager<StringBroadcastContent>>> lookups = new ArrayList<>();
+            for (int i = 0; i < 64; i++)
+                lookups.add(() -> registry.get("A"));
+            List<Future<BroadcastContentManager<StringBroadcastContent>>> managers = pool.invokeAll(lookups);
+            for (Future<BroadcastContentManager<StringBroadcastContent>> manager : managers)
+                assertSame(managers.get(0).get(), manager.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads a field of the registry's internal entry of the provided key.
+     */
+    private Object getEntryField(String key, String fieldName) throws Exception {
+        Field shardsField = BroadcastContentManagerRegistry.class.getDeclaredField("shards");
+        shardsField.setAccessible(true);
+        for (Map<?, ?> shard : (Map<?, ?>[]) shardsField.get(registry)) {
+            Object entry = shard.get(key);
+            if (entry != null) {
+                Field field = entry.getClass().getDeclaredField(fieldName);
+                field.setAccessible(true);
+                return field.get(entry);
+            }
+        }
+        throw new IllegalStateException("No entry for key " + key);
+    }
+}
@@ -4,7 +4,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -119,4 +128,50 @@ public class BroadcastContentManagerTest {
         Thread.currentThread().interrupt();
         manager.awaitUpdate();
     }
+
+    /**
+     * Every update must be serialized exactly once, no matter how many subscribers are notified, and each accepted
+     * update must increment the snapshot version.
+     */
+    @Test
+    public void serializeOncePerUpdate() {
+        AtomicInteger serializations = new AtomicInteger();
+        BroadcastContentManager<CountingBroadcastContent> countingManager =
+                new BroadcastContentManager<>(new CountingBroadcastContent("A", serializations));
+        countingManager.enableEventDrivenNotification();
+        long initialVersion = countingManager.getCurrentSnapshot().getVersion();
+
+        List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+        for (int i = 0; i < 100; i++)
+            results.add(ResponseGenerator.getAsyncUpdate(5000, countingManager));
+
+        // the hash of the initial content is computed lazily, make sure it is not counted for the update
+        countingManager.getContentHash();
+        serializations.set(0);
+        countingManager.updateBroadcastContent(new CountingBroadcastContent("B", serializations));
+        await().atMost(Duration.ofMillis(2000)).until(() -> results.stream().allMatch(DeferredResult::hasResult));
+
+        // hash comparison and all replies share one serialization
+        assertEquals(1, serializations.get());
+        assertEquals(initialVersion + 1, countingManager.getCurrentSnapshot().getVersion());
+    }
+
+    /**
+     * String content that counts how often it was serialized.
+     */
+    public static class CountingBroadcastContent extends StringBroadcastContent {
+
+        private final AtomicInteger serializations;
+
+        public CountingBroadcastContent(String content, AtomicInteger serializations) {
+            super(content);
+            this.serializations = serializations;
+        }
+
+        @Override
+        public String getContent() {
+            serializations.incrementAndGet();
+            return super.getContent();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests replies with byte[] bodies that are shared across all clients.
+ */
+public class ByteUpdateTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+    }
+
+    /**
+     * All clients receive the very same array, which is the manager's serialization of the content.
+     */
+    @Test
+    public void shareSerializedBytes() {
+        ResponseEntity<byte[]> first = (ResponseEntity<byte[]>) ByteResponseGenerator.getHashBasedUpdate(timeout, bcm,
+                "").getResult();
+        ResponseEntity<byte[]> second = (ResponseEntity<byte[]>) ByteResponseGenerator.getVersionBasedUpdate(timeout,
+                bcm, 0).getResult();
+        assertSame(first.getBody(), second.getBody());
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                new String(first.getBody(), StandardCharsets.UTF_8));
+        assertEquals(MediaType.APPLICATION_JSON_UTF8, first.getHeaders().getContentType());
+        assertEquals("1", first.getHeaders().getFirst(ResponseGenerator.VERSION_HEADER));
+    }
+
+    /**
+     * Pending byte requests are completed on the next update.
+     */
+    @Test
+    public void asyncByteReply() {
+        DeferredResult<ResponseEntity<byte[]>> result = ByteResponseGenerator.getAsyncUpdate(timeout, bcm);
+        assertFalse(result.hasResult());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                new String(((ResponseEntity<byte[]>) result.getResult()).getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Catch-up lists are composed of the shared serializations and match the String variant.
+     */
+    @Test
+    public void byteCatchUpMatchesStringCatchUp() {
+        bcm.setHistoryCapacity(5);
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+
+        ResponseEntity<byte[]> bytes = (ResponseEntity<byte[]>) ByteResponseGenerator.getUpdatesSince(timeout, bcm, 1)
+                .getResult();
+        ResponseEntity<String> string = (ResponseEntity<String>) ResponseGenerator.getUpdatesSince(timeout, bcm, 1)
+                .getResult();
+        assertEquals(string.getBody(), new String(bytes.getBody(), StandardCharsets.UTF_8));
+        assertEquals(string.getHeaders(), bytes.getHeaders());
+    }
+
+    /**
+     * The manager exposes its serialization as read-only view, without copying.
+     */
+    @Test
+    public void readOnlySerializedContent() {
+        ByteBuffer serialized = bcm.getSerializedBroadcastContent();
+        assertTrue(serialized.isReadOnly());
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                StandardCharsets.UTF_8.decode(serialized).toString());
+    }
+}
@@ -0,0 +1,146 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the collapsing of rapid updates into a single notification.
+ */
+public class CoalescingTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+    }
+
+    /**
+     * The first update is published right away, all updates within the minimum interval collapse into the latest.
+     */
+    @Test
+    public void minInterval() {
+        bcm.setCoalescingPolicy(CoalescingPolicy.minInterval(300));
+        bcm.updateBroadcastContent(new StringBroadcastContent("first"));
+        assertEquals(2, bcm.getContentVersion());
+
+        for (int i = 0; i < 10; i++)
+            bcm.updateBroadcastContent(new StringBroadcastContent("frame-" + i));
+        assertEquals(2, bcm.getContentVersion());
+
+        await().atMost(Duration.ofMillis(1000)).until(() -> bcm.getContentVersion() == 3);
+        assertEquals("frame-9", bcm.getCurrentBroadcastContent().getContent());
+        assertEquals(9, bcm.getCoalescedUpdateCount());
+    }
+
+    /**
+     * A steady stream of updates is published at least once per max latency, rather than never.
+     */
+    @Test
+    public void debounceWithMaxLatency() throws InterruptedException {
+        bcm.setCoalescingPolicy(CoalescingPolicy.debounce(100, 250));
+        int updates = 40;
+        for (int i = 0; i < updates; i++) {
+            bcm.updateBroadcastContent(new StringBroadcastContent("frame-" + i));
+            Thread.sleep(20);
+        }
+
+        // 800 ms of updates: published about every 250ms while the producer is active, then once after quiet period.
+        await().atMost(Duration.ofMillis(1000)).until(() ->
+                bcm.getCurrentBroadcastContent().getContent().equals("frame-" + (updates - 1)));
+        long publications = bcm.getContentVersion() - 1;
+        assertTrue("Publications: " + publications, publications >= 2 && publications <= 6);
+        assertEquals(updates - publications, bcm.getCoalescedUpdateCount());
+    }
+
+    /**
+     * Waiting clients are woken up once, with the latest state.
+     */
+    @Test
+    public void waitersReceiveLatestState() {
+        bcm.setCoalescingPolicy(CoalescingPolicy.debounce(100, 1000));
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getAsyncUpdate(5000, bcm);
+
+        for (int i = 0; i < 10; i++)
+            bcm.updateBroadcastContent(new StringBroadcastContent("frame-" + i));
+        await().atMost(Duration.ofMillis(1000)).until(result::hasResult);
+        assertTrue(((ResponseEntity<String>) result.getResult()).getBody().contains("frame-9"));
+        assertEquals(2, bcm.getContentVersion());
+    }
+
+    /**
+     * Withheld updates are published before termination.
+     */
+    @Test
+    public void terminationPublishesPendingUpdate() {
+        bcm.setCoalescingPolicy(CoalescingPolicy.debounce(5000, 5000));
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        assertEquals("A", bcm.getCurrentBroadcastContent().getContent());
+
+        bcm.terminate();
+        assertEquals("B", bcm.getCurrentBroadcastContent().getContent());
+    }
+
+    /**
+     * Terminating publishes the pending update right away and leaves no publication scheduled on the timer thread.
+     * Updates of producers that passed the termination check of the manager just before it terminated are rejected on
+     * the producer thread.
+     */
+    @Test
+    public void terminationCancelsScheduledPublication() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        timer.setRemoveOnCancelPolicy(true);
+        try {
+            ContentSerializer serializer = new ContentSerializer(bcm.getImmutableSerializer(), HashAlgorithm.MD5);
+            UpdateCoalescer<StringBroadcastContent> coalescer = new UpdateCoalescer<>(bcm,
+                    CoalescingPolicy.debounce(5000, 5000), timer, new AtomicLong());
+            coalescer.offerUpdate(new SerializedContent<>(serializer, new StringBroadcastContent("B")));
+            assertEquals(1, timer.getQueue().size());
+
+            coalescer.terminate();
+            bcm.terminate();
+            assertEquals("B", bcm.getCurrentBroadcastContent().getContent());
+            assertTrue(timer.getQueue().isEmpty());
+            try {
+                coalescer.offerUpdate(new SerializedContent<>(serializer, new StringBroadcastContent("C")));
+                fail("Updates must be rejected once terminated.");
+            } catch (RuntimeException e) {
+                assertTrue(timer.getQueue().isEmpty());
+            }
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Removing the policy publishes withheld updates and disables coalescing.
+     */
+    @Test
+    public void removePolicy() {
+        bcm.setCoalescingPolicy(CoalescingPolicy.minInterval(5000));
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        assertEquals("B", bcm.getCurrentBroadcastContent().getContent());
+
+        bcm.setCoalescingPolicy(null);
+        assertEquals("C", bcm.getCurrentBroadcastContent().getContent());
+        bcm.updateBroadcastContent(new StringBroadcastContent("D"));
+        assertEquals("D", bcm.getCurrentBroadcastContent().getContent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectMaxLatencyBelowQuietPeriod() {
+        CoalescingPolicy.debounce(100, 50);
+    }
+}
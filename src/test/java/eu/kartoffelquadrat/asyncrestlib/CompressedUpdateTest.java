@@ -0,0 +1,137 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests replies with bodies that are compressed once per content version and coding.
+ */
+public class CompressedUpdateTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent(repeat("hello ", 200)));
+    }
+
+    /**
+     * The preferred coding is selected by quality value, gzip wins ties, unsupported codings are ignored.
+     */
+    @Test
+    public void negotiateCoding() {
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate(null));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate("br"));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate("gzip;q=0"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("gzip, deflate, br"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("*;q=0.1"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("deflate, gzip;q=0"));
+    }
+
+    /**
+     * Gzip replies carry the coding header and decompress to the json serialization.
+     */
+    @Test
+    public void gzipReply() throws IOException {
+        ResponseEntity<byte[]> reply = (ResponseEntity<byte[]>) ResponseGenerator.getCompressedHashBasedUpdate(timeout,
+                bcm, "", "gzip, deflate").getResult();
+        assertEquals("gzip", reply.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, reply.getHeaders().getFirst(HttpHeaders.VARY));
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                inflate(new GZIPInputStream(new ByteArrayInputStream(reply.getBody()))));
+    }
+
+    /**
+     * Deflate replies use the zlib format.
+     */
+    @Test
+    public void deflateReply() throws IOException {
+        ResponseEntity<byte[]> reply = (ResponseEntity<byte[]>) ResponseGenerator.getCompressedVersionBasedUpdate(
+                timeout, bcm, 0, "deflate").getResult();
+        assertEquals("deflate", reply.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                inflate(new InflaterInputStream(new ByteArrayInputStream(reply.getBody()))));
+    }
+
+    /**
+     * All clients receive the very same compressed bytes, until the version changes.
+     */
+    @Test
+    public void compressOncePerVersion() {
+        byte[] first = compressedBody();
+        assertSame(first, compressedBody());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent(repeat("world ", 200)));
+        assertNotSame(first, compressedBody());
+    }
+
+    /**
+     * Content that does not shrink by compression is sent as is.
+     */
+    @Test
+    public void skipCompressionOfSmallContent() {
+        bcm.updateBroadcastContent(new StringBroadcastContent("A"));
+        ResponseEntity<byte[]> reply = (ResponseEntity<byte[]>) ResponseGenerator.getCompressedHashBasedUpdate(timeout,
+                bcm, "", "gzip").getResult();
+        assertNull(reply.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                new String(reply.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Pending compressed requests are completed on the next update, like any other request.
+     */
+    @Test
+    public void compressedAsyncReply() throws IOException {
+        DeferredResult<ResponseEntity<byte[]>> result = ResponseGenerator.getCompressedVersionBasedUpdate(timeout, bcm,
+                bcm.getContentVersion(), "gzip");
+        assertEquals(false, result.hasResult());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent(repeat("world ", 200)));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        ResponseEntity<byte[]> reply = (ResponseEntity<byte[]>) result.getResult();
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                inflate(new GZIPInputStream(new ByteArrayInputStream(reply.getBody()))));
+    }
+
+    private byte[] compressedBody() {
+        return ((ResponseEntity<byte[]>) ResponseGenerator.getCompressedHashBasedUpdate(timeout, bcm, "", "gzip")
+                .getResult()).getBody();
+    }
+
+    private static String inflate(InputStream decoder) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = decoder.read(buffer)) > 0)
+            plain.write(buffer, 0, read);
+        return new String(plain.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            builder.append(text);
+        return builder.toString();
+    }
+}
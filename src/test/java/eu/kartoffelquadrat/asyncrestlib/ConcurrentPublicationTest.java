@@ -0,0 +1,183 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests for the publication of content changes by many concurrent producer threads. Verifies that no update
+ * gets lost, versions are unique and gapless, and no subscriber misses a version.
+ */
+public class ConcurrentPublicationTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int UPDATES_PER_PRODUCER = 500;
+
+    /**
+     * Distinct concurrent updates each result in exactly one new version.
+     */
+    @Test
+    public void noLostUpdates() throws Exception {
+        BroadcastContentManager<StringBroadcastContent> bcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("initial"));
+        bcm.setHistoryCapacity(PRODUCERS * UPDATES_PER_PRODUCER + 1);
+
+        runConcurrently(producer -> {
+            for (int i = 0; i < UPDATES_PER_PRODUCER; i++)
+                bcm.updateBroadcastContent(new StringBroadcastContent(producer + "-" + i));
+            return null;
+        });
+
+        assertEquals(1 + PRODUCERS * UPDATES_PER_PRODUCER, bcm.getContentVersion());
+
+        // Every update is retained exactly once, under a unique version.
+        List<ContentSnapshot<StringBroadcastContent>> history = bcm.getSnapshotsSince(0);
+        assertEquals(1 + PRODUCERS * UPDATES_PER_PRODUCER, history.size());
+        Set<String> contents = new HashSet<>();
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals(i + 1, history.get(i).getVersion());
+            contents.add(history.get(i).getContent().getContent());
+        }
+        assertEquals(history.size(), contents.size());
+    }
+
+    /**
+     * Concurrent identical updates are accepted only once in hash sync mode.
+     */
+    @Test
+    public void identicalUpdatesAcceptedOnce() throws Exception {
+        BroadcastContentManager<StringBroadcastContent> bcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("initial"));
+
+        runConcurrently(producer -> {
+            for (int i = 0; i < UPDATES_PER_PRODUCER; i++)
+                bcm.updateBroadcastContent(new StringBroadcastContent("identical"));
+            return null;
+        });
+
+        assertEquals(2, bcm.getContentVersion());
+    }
+
+    /**
+     * Subscribers that follow the versions one by one never miss the final version, regardless of the notification
+     * mode.
+     */
+    @Test
+    public void subscribersReachFinalVersion() throws Exception {
+        subscribersReachFinalVersion(false);
+        subscribersReachFinalVersion(true);
+    }
+
+    private void subscribersReachFinalVersion(boolean eventDriven) throws Exception {
+        BroadcastContentManager<StringBroadcastContent> bcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("initial"));
+        if (eventDriven)
+            bcm.enableEventDrivenNotification();
+        long finalVersion = 1 + PRODUCERS * UPDATES_PER_PRODUCER;
+
+        ExecutorService subscribers = Executors.newFixedThreadPool(4);
+        List<Future<Long>> reachedVersions = new LinkedList<>();
+        for (int i = 0; i < 4; i++) {
+            reachedVersions.add(subscribers.submit(() -> {
+                long clientVersion = 1;
+                while (clientVersion < finalVersion) {
+                    DeferredResult<ResponseEntity<String>> result =
+                            ResponseGenerator.getVersionBasedUpdate(5000, bcm, clientVersion);
+                    await().atMost(Duration.ofSeconds(5)).until(result::hasResult);
+                    long receivedVersion = Long.parseLong(((ResponseEntity<String>) result.getResult()).getHeaders()
+                            .getFirst(ResponseGenerator.VERSION_HEADER));
+                    assertTrue(receivedVersion > clientVersion);
+                    clientVersion = receivedVersion;
+                }
+                return clientVersion;
+            }));
+        }
+
+        runConcurrently(producer -> {
+            for (int i = 0; i < UPDATES_PER_PRODUCER; i++)
+                bcm.updateBroadcastContent(new StringBroadcastContent(producer + "-" + i));
+            return null;
+        });
+
+        for (Future<Long> reachedVersion : reachedVersions)
+            assertEquals(finalVersion, (long) reachedVersion.get(10, TimeUnit.SECONDS));
+        subscribers.shutdown();
+    }
+
+    /**
+     * Termination during concurrent updates is final: no update is accepted afterwards and all waiters are released.
+     */
+    @Test
+    public void terminationDuringUpdates() throws Exception {
+        BroadcastContentManager<StringBroadcastContent> bcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("initial"));
+        DeferredResult<ResponseEntity<String>> pending = ResponseGenerator.getAsyncUpdate(5000, bcm);
+        AtomicInteger rejectedUpdates = new AtomicInteger();
+        AtomicLong versionAtTermination = new AtomicLong();
+
+        runConcurrently(producer -> {
+            if (producer == 0) {
+                Thread.sleep(5);
+                bcm.terminate();
+                versionAtTermination.set(bcm.getContentVersion());
+                return null;
+            }
+            for (int i = 0; i < UPDATES_PER_PRODUCER; i++) {
+                try {
+                    bcm.updateBroadcastContent(new StringBroadcastContent(producer + "-" + i));
+                } catch (RuntimeException e) {
+                    rejectedUpdates.incrementAndGet();
+                }
+            }
+            return null;
+        });
+
+        assertTrue(bcm.isTerminated());
+        assertEquals(versionAtTermination.get(), bcm.getContentVersion());
+        assertEquals((PRODUCERS - 1) * UPDATES_PER_PRODUCER,
+                bcm.getContentVersion() - 1 + rejectedUpdates.get());
+        await().atMost(Duration.ofMillis(500)).until(pending::hasResult);
+    }
+
+    /**
+     * Runs the provided task on all producer threads at once and waits for completion.
+     */
+    private static void runConcurrently(ProducerTask task) throws Exception {
+        ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> results = new LinkedList<>();
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            int producerId = producer;
+            results.add(producers.submit((Callable<Void>) () -> {
+                start.await();
+                return task.run(producerId);
+            }));
+        }
+        start.countDown();
+        for (Future<Void> result : results)
+            result.get(30, TimeUnit.SECONDS);
+        producers.shutdown();
+    }
+
+    private interface ProducerTask {
+        Void run(int producer) throws Exception;
+    }
+}
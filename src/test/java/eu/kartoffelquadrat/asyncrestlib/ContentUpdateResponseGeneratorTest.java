@@ -7,10 +7,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.context.request.async.DeferredResult;
 
-import java.lang.reflect.Field;
 import java.time.Duration;
 
 import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -126,23 +126,31 @@ public class ContentUpdateResponseGeneratorTest {
      * Verify that a terminated BCM always leads to a 410 (gone) HTTP Code.
      */
     @Test
-    public void verifyTerminated() throws NoSuchFieldException, IllegalAccessException {
+    public void verifyTerminated() {
 
         // Create some state that will be observed by the content and immediately terminate the bcm
         BroadcastContentManager<StringBroadcastContent> bcm = new BroadcastContentManager(new StringBroadcastContent("A"));
         bcm.terminate();
 
-        // now register a client to the responseGenerator and make sure all fired updates (including the initial
-        // state "A" are registered) -> we provide an empty string as hash to get the initial state (synchronized).
+        // now register a client to the responseGenerator, the result must already be set to a complete entity that
+        // spring can write to the HTTP response.
         DeferredResult<ResponseEntity<String>> deferredResult = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        assertTrue(deferredResult.getResult() instanceof ResponseEntity);
+        assertEquals(410, ((ResponseEntity<?>) deferredResult.getResult()).getStatusCodeValue());
+    }
+
+    /**
+     * Verify that pending requests are answered with a 204 (no content) HTTP Code, once the BCM is terminated.
+     */
+    @Test
+    public void verifyTerminatedWhilePending() {
+
+        DeferredResult<ResponseEntity<String>> deferredResult = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        assertFalse(deferredResult.hasResult());
+        bcm.terminate();
 
-        // At this point we can not simply extract and cast the response as-is. Unfortunately spring does not allow the
-        // cast of responseEntities, if the result code represents an error. (defaultbuilder exception)
-        // Therefore we need extract the status code using reflection.
-        Object responseEntity = deferredResult.getResult();
-        Field statusCodeField = responseEntity.getClass().getDeclaredField("statusCode");
-        statusCodeField.setAccessible(true);
-        HttpStatus httpStatus = (HttpStatus) statusCodeField.get(responseEntity);
-        assertTrue(httpStatus.value() == 410);
+        await().atMost(Duration.ofMillis(500)).until(deferredResult::hasResult);
+        assertTrue(deferredResult.getResult() instanceof ResponseEntity);
+        assertEquals(204, ((ResponseEntity<?>) deferredResult.getResult()).getStatusCodeValue());
     }
 }
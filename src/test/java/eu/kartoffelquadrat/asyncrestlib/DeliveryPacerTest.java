@@ -0,0 +1,141 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the release of registered waiters in paced waves. The dispatcher runs tasks on the calling thread, so the first
+ * wave is released by the updating thread and all further waves by the timer.
+ */
+public class DeliveryPacerTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final AtomicInteger spreads = new AtomicInteger();
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        bcm.enableEventDrivenNotification(Runnable::run);
+        bcm.setMetrics(new ManagerMetrics() {
+            @Override
+            public void deliverySpread(long startTime) {
+                spreads.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Waiters are released in waves of the configured rate, until all are done.
+     */
+    @Test
+    public void releaseInWaves() {
+        bcm.setDeliveryPacer(DeliveryPacer.repliesPerSecond(1000).withWaveInterval(20));
+        List<DeferredResult<ResponseEntity<String>>> results = awaitUpdates(100);
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        assertEquals(20, completed(results));
+
+        await().atMost(Duration.ofMillis(2000)).until(() -> completed(results) == 100);
+        assertEquals(0, bcm.getPendingWaiterCount());
+        await().atMost(Duration.ofMillis(500)).until(() -> spreads.get() == 1);
+    }
+
+    /**
+     * Byte rates are converted into waves by the size of the serialized content.
+     */
+    @Test
+    public void byteRate() {
+        int contentSize = bcm.getSerializedBroadcastContent().remaining();
+        bcm.setDeliveryPacer(DeliveryPacer.bytesPerSecond(contentSize * 500L).withWaveInterval(20));
+        List<DeferredResult<ResponseEntity<String>>> results = awaitUpdates(50);
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        assertEquals(10, completed(results));
+        await().atMost(Duration.ofMillis(2000)).until(() -> completed(results) == 50);
+    }
+
+    /**
+     * Pending waves are dropped on a later update, whose waves deliver the latest state to the remaining waiters.
+     */
+    @Test
+    public void laterUpdateSupersedesWaves() {
+        bcm.setDeliveryPacer(DeliveryPacer.repliesPerSecond(20).withWaveInterval(50));
+        List<DeferredResult<ResponseEntity<String>>> results = awaitUpdates(5);
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        assertEquals(2, completed(results));
+
+        await().atMost(Duration.ofMillis(2000)).until(() -> completed(results) == 5);
+        long outdatedReplies = results.stream()
+                .filter(result -> ((ResponseEntity<?>) result.getResult()).getBody().toString().contains("B"))
+                .count();
+        assertEquals(1, outdatedReplies);
+        await().atMost(Duration.ofMillis(500)).until(() -> spreads.get() == 2);
+    }
+
+    /**
+     * Waiters a superseded fan-out did not reach come first in the next fan-out. Updates that arrive faster than the
+     * waves must not keep releasing clients that re-poll, while earlier waiters starve.
+     */
+    @Test
+    public void frequentUpdatesReleaseEveryWaiter() {
+        bcm.setDeliveryPacer(DeliveryPacer.repliesPerSecond(20).withWaveInterval(50));
+        List<DeferredResult<ResponseEntity<String>>> results = awaitUpdates(10);
+        List<DeferredResult<ResponseEntity<String>>> repolls = new LinkedList<>();
+
+        // Every update only gets to release its first wave. Released clients re-poll right away.
+        for (int i = 0; i < results.size(); i++) {
+            bcm.updateBroadcastContent(new StringBroadcastContent("U" + i));
+            long released = completed(results) + completed(repolls);
+            for (long j = repolls.size(); j < released; j++)
+                repolls.add(ResponseGenerator.getAsyncUpdate(timeout, bcm));
+        }
+        assertEquals(results.size(), completed(results));
+    }
+
+    /**
+     * Terminations release all waiters right away.
+     */
+    @Test
+    public void terminationIsNotPaced() {
+        bcm.setDeliveryPacer(DeliveryPacer.repliesPerSecond(1).withWaveInterval(1000));
+        List<DeferredResult<ResponseEntity<String>>> results = awaitUpdates(10);
+
+        bcm.terminate();
+        assertEquals(10, completed(results));
+        assertEquals(0, spreads.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidRate() {
+        DeliveryPacer.bytesPerSecond(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidWaveInterval() {
+        DeliveryPacer.repliesPerSecond(100).withWaveInterval(0);
+    }
+
+    private List<DeferredResult<ResponseEntity<String>>> awaitUpdates(int amount) {
+        List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+        for (int i = 0; i < amount; i++)
+            results.add(ResponseGenerator.getAsyncUpdate(timeout, bcm));
+        return results;
+    }
+
+    private static long completed(List<DeferredResult<ResponseEntity<String>>> results) {
+        return results.stream().filter(DeferredResult::hasResult).count();
+    }
+}
@@ -0,0 +1,200 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests delta updates, that is merge patches from the client version to the current version.
+ */
+public class DeltaUpdateTest {
+
+    private BroadcastContentManager<MapBroadcastContent> bcm;
+    private final int timeout = 5000;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new MapBroadcastContent("alice", "online", "bob", "offline", "carol",
+                "away"));
+        bcm.setHistoryCapacity(5);
+    }
+
+    /**
+     * Applying the delta to the client version yields the current content.
+     */
+    @Test
+    public void patchLeadsToCurrentContent() throws IOException {
+        long clientVersion = bcm.getContentVersion();
+        String clientState = bcm.getCurrentSnapshot().getSerializedContent().getSerialized();
+        bcm.updateBroadcastContent(new MapBroadcastContent("alice", "online", "bob", "online", "dave", "away"));
+
+        ResponseEntity<String> responseEntity =
+                (ResponseEntity<String>) ResponseGenerator.getDeltaUpdate(timeout, bcm, clientVersion).getResult();
+        assertEquals(String.valueOf(clientVersion),
+                responseEntity.getHeaders().getFirst(ResponseGenerator.DELTA_BASE_HEADER));
+        assertEquals(MergePatch.MEDIA_TYPE, responseEntity.getHeaders().getContentType().toString());
+
+        JsonNode patched = apply(mapper.readTree(clientState), mapper.readTree(responseEntity.getBody()));
+        assertEquals(mapper.readTree(bcm.getCurrentSnapshot().getSerializedContent().getSerialized()), patched);
+    }
+
+    /**
+     * A client that waits for the next version receives a delta as well.
+     */
+    @Test
+    public void asynchronousDelta() {
+        DeferredResult<ResponseEntity<String>> result =
+                ResponseGenerator.getDeltaUpdate(timeout, bcm, bcm.getContentVersion());
+        assertFalse(result.hasResult());
+
+        bcm.updateBroadcastContent(new MapBroadcastContent("alice", "offline", "bob", "offline", "carol", "away"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        ResponseEntity<String> responseEntity = (ResponseEntity<String>) result.getResult();
+        assertEquals("{\"entries\":{\"alice\":\"offline\"}}", responseEntity.getBody());
+    }
+
+    /**
+     * Clients with an evicted version receive the full content.
+     */
+    @Test
+    public void fullContentOnEvictedVersion() {
+        bcm.setHistoryCapacity(0);
+        long clientVersion = bcm.getContentVersion();
+        bcm.updateBroadcastContent(new MapBroadcastContent("alice", "offline", "bob", "offline", "carol", "away"));
+
+        ResponseEntity<String> responseEntity =
+                (ResponseEntity<String>) ResponseGenerator.getDeltaUpdate(timeout, bcm, clientVersion).getResult();
+        assertNull(responseEntity.getHeaders().getFirst(ResponseGenerator.DELTA_BASE_HEADER));
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(), responseEntity.getBody());
+    }
+
+    /**
+     * Null members can not be expressed by merge patches, the full content is sent instead.
+     */
+    @Test
+    public void fullContentOnNullMember() {
+        long clientVersion = bcm.getContentVersion();
+        bcm.updateBroadcastContent(new MapBroadcastContent("alice", null, "bob", "offline", "carol", "away"));
+
+        ResponseEntity<String> responseEntity =
+                (ResponseEntity<String>) ResponseGenerator.getDeltaUpdate(timeout, bcm, clientVersion).getResult();
+        assertNull(responseEntity.getHeaders().getFirst(ResponseGenerator.DELTA_BASE_HEADER));
+    }
+
+    /**
+     * Patches are compared with the full content by encoded size. Here the patch has less characters than the full
+     * content has bytes, but is larger once encoded, for it repeats the non-ASCII value and removes other members.
+     */
+    @Test
+    public void fullContentOnLargerEncodedPatch() {
+        long clientVersion = bcm.getContentVersion();
+        String umlauts = "\u00e4\u00f6\u00fc\u00e4\u00f6\u00fc\u00e4\u00f6\u00fc\u00e4\u00f6\u00fc";
+        bcm.updateBroadcastContent(new MapBroadcastContent("alice", umlauts + umlauts + umlauts));
+
+        ResponseEntity<String> responseEntity =
+                (ResponseEntity<String>) ResponseGenerator.getDeltaUpdate(timeout, bcm, clientVersion).getResult();
+        assertNull(responseEntity.getHeaders().getFirst(ResponseGenerator.DELTA_BASE_HEADER));
+    }
+
+    /**
+     * Clients on the same base version share the same patch.
+     */
+    @Test
+    public void patchComputedOncePerBase() {
+        long clientVersion = bcm.getContentVersion();
+        bcm.updateBroadcastContent(new MapBroadcastContent("alice", "offline", "bob", "offline", "carol", "away"));
+
+        String firstPatch = ((ResponseEntity<String>) ResponseGenerator.getDeltaUpdate(timeout, bcm, clientVersion)
+                .getResult()).getBody();
+        String secondPatch = ((ResponseEntity<String>) ResponseGenerator.getDeltaUpdate(timeout, bcm, clientVersion)
+                .getResult()).getBody();
+        assertSame(firstPatch, secondPatch);
+    }
+
+    /**
+     * Touched versions keep the state at touch time, also if the content instance is modified again before anyone
+     * read them. Catch-up replies and patches between touched versions therefore reflect each modification.
+     */
+    @Test
+    public void touchCapturesStateAtTouchTime() throws IOException {
+        MapBroadcastContent content = new MapBroadcastContent("alice", "online", "bob", "offline");
+        bcm = new BroadcastContentManager<>(content);
+        bcm.setHistoryCapacity(5);
+        long clientVersion = bcm.getContentVersion();
+
+        content.getEntries().put("alice", "offline");
+        bcm.touch();
+        content.getEntries().put("bob", "online");
+        bcm.touch();
+        content.getEntries().put("carol", "away");
+
+        JsonNode entries = mapper.readTree(((ResponseEntity<String>) ResponseGenerator.getUpdatesSince(timeout, bcm,
+                clientVersion).getResult()).getBody());
+        assertEquals(2, entries.size());
+        assertEquals(mapper.readTree("{\"alice\":\"offline\",\"bob\":\"offline\"}"),
+                entries.get(0).get("content").get("entries"));
+        assertEquals(mapper.readTree("{\"alice\":\"offline\",\"bob\":\"online\"}"),
+                entries.get(1).get("content").get("entries"));
+
+        ResponseEntity<String> delta = (ResponseEntity<String>) ResponseGenerator.getDeltaUpdate(timeout, bcm,
+                clientVersion + 1).getResult();
+        assertEquals("{\"entries\":{\"bob\":\"online\"}}", delta.getBody());
+    }
+
+    /**
+     * Reference implementation of the merge patch algorithm, as described in RFC 7386.
+     */
+    private JsonNode apply(JsonNode target, JsonNode patch) {
+        if (!patch.isObject())
+            return patch;
+        ObjectNode result = target.isObject() ? ((ObjectNode) target).deepCopy() : mapper.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isNull())
+                result.remove(field.getKey());
+            else
+                result.set(field.getKey(), apply(result.path(field.getKey()), field.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Content with multiple members, so that patches are smaller than the full serialization.
+     */
+    public static class MapBroadcastContent implements BroadcastContent {
+
+        private final Map<String, String> entries = new LinkedHashMap<>();
+
+        public MapBroadcastContent(String... keysAndValues) {
+            for (int i = 0; i < keysAndValues.length; i += 2)
+                entries.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+
+        public Map<String, String> getEntries() {
+            return entries;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the event-driven notification mode, where pending requests are registered at the BroadcastContentManager
+ * instead of being served by a dedicated thread.
+ */
+public class EventDrivenUpdateTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("27225ea03d26abf31a83b3cae6d78489"));
+        bcm.enableEventDrivenNotification();
+    }
+
+    /**
+     * Many pending requests must not result in as many threads. All of them must be completed on the next update.
+     */
+    @Test
+    public void completeManyWaitersWithoutThreads() {
+        int threadsBefore = Thread.activeCount();
+
+        List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+        for (int i = 0; i < 1000; i++)
+            results.add(ResponseGenerator.getAsyncUpdate(timeout, bcm));
+
+        // No result must be set yet and no thread per request must have been started.
+        for (DeferredResult<ResponseEntity<String>> result : results)
+            assertNull(result.getResult());
+        assertTrue(Thread.activeCount() < threadsBefore + 100);
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("SomethingNew"));
+
+        await().atMost(Duration.ofMillis(2000)).until(() -> results.stream().allMatch(DeferredResult::hasResult));
+        for (DeferredResult<ResponseEntity<String>> result : results) {
+            ResponseEntity<String> responseEntity = (ResponseEntity<String>) result.getResult();
+            assertEquals(200, responseEntity.getStatusCodeValue());
+            assertTrue(responseEntity.getBody().contains("SomethingNew"));
+        }
+    }
+
+    /**
+     * A hashed request that matches the current content must stay pending, until an update changes the hash.
+     */
+    @Test
+    public void hashedWaiterIgnoresIrrelevantUpdates() {
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getTransformedUpdate(timeout, bcm,
+                bcm.getContentHash(), new EraserTransformer(), "keyword");
+        assertFalse(result.hasResult());
+
+        // Update that is erased by the transformer, must not be propagated.
+        bcm.updateBroadcastContent(new StringBroadcastContent("irrelevant"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("contains keyword"));
+
+        await().atMost(Duration.ofMillis(2000)).until(result::hasResult);
+        assertTrue(((ResponseEntity<String>) result.getResult()).getBody().contains("contains keyword"));
+    }
+
+    /**
+     * Termination of the manager must release all registered waiters with a 204.
+     */
+    @Test
+    public void terminateReleasesWaiters() {
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getHashBasedUpdate(timeout, bcm,
+                bcm.getContentHash());
+        assertFalse(result.hasResult());
+
+        bcm.terminate();
+        await().atMost(Duration.ofMillis(2000)).until(result::hasResult);
+        assertEquals(204, ((ResponseEntity<?>) result.getResult()).getStatusCodeValue());
+    }
+}
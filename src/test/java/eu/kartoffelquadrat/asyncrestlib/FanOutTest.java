@@ -0,0 +1,149 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the evaluation of registered waiters in parallel chunks, according to a fan-out policy.
+ */
+public class FanOutTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private ExecutorService pool;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * All waiters must be completed, evaluated by several dispatcher tasks.
+     */
+    @Test
+    public void completeAllWaitersInChunks() {
+        AtomicInteger dispatchedTasks = new AtomicInteger();
+        bcm.enableEventDrivenNotification(task -> {
+            dispatchedTasks.incrementAndGet();
+            pool.execute(task);
+        });
+        bcm.setFanOutPolicy(FanOutPolicy.parallel(100));
+
+        List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+        for (int i = 0; i < 1000; i++)
+            results.add(ResponseGenerator.getAsyncUpdate(timeout, bcm));
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+
+        await().atMost(Duration.ofMillis(2000)).until(() -> results.stream().allMatch(DeferredResult::hasResult));
+        // one task to partition the waiters, which then evaluates the last of 10 chunks itself
+        assertEquals(10, dispatchedTasks.get());
+        assertEquals(0, bcm.getPendingWaiterCount());
+    }
+
+    /**
+     * Each transformed view must be computed once, even if the waiters observing it are evaluated in parallel.
+     */
+    @Test
+    public void transformOncePerView() {
+        bcm.enableEventDrivenNotification(pool);
+        bcm.setFanOutPolicy(FanOutPolicy.parallel(50));
+        AtomicInteger transformations = new AtomicInteger();
+        Transformer<StringBroadcastContent> transformer = (content, tag) -> {
+            transformations.incrementAndGet();
+            return new StringBroadcastContent(content.getContent() + tag);
+        };
+
+        List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+        for (int i = 0; i < 1000; i++)
+            results.add(ResponseGenerator.getTransformedVersionBasedUpdate(timeout, bcm, bcm.getContentVersion(),
+                    transformer, "-" + (i % 10)));
+        assertEquals(0, transformations.get());
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+
+        await().atMost(Duration.ofMillis(2000)).until(() -> results.stream().allMatch(DeferredResult::hasResult));
+        assertEquals(10, transformations.get());
+    }
+
+    /**
+     * Waiters of the same view must be placed into the same chunks.
+     */
+    @Test
+    public void groupChunksByView() {
+        Transformer<StringBroadcastContent> transformer = (content, tag) -> content;
+        List<UpdateListener> waiters = new ArrayList<>();
+        for (int i = 0; i < 12; i++)
+            waiters.add(new SseSubscriber<>(bcm, null, transformer, "tag-" + (i % 3), null));
+
+        List<List<UpdateListener>> chunks = FanOutPolicy.parallel(4).partition(waiters);
+        assertEquals(3, chunks.size());
+        for (List<UpdateListener> chunk : chunks) {
+            Set<Object> viewKeys = new HashSet<>();
+            for (UpdateListener waiter : chunk)
+                viewKeys.add(waiter.getViewKey());
+            assertEquals(1, viewKeys.size());
+        }
+    }
+
+    /**
+     * Small fan-outs are evaluated by the updating thread, larger ones are not evaluated by the updating thread at
+     * all.
+     */
+    @Test
+    public void inlineLimit() {
+        Queue<Runnable> withheldTasks = new ConcurrentLinkedQueue<>();
+        bcm.enableEventDrivenNotification(withheldTasks::add);
+        bcm.setFanOutPolicy(FanOutPolicy.parallel(100).withInlineLimit(2));
+
+        List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+        for (int i = 0; i < 2; i++)
+            results.add(ResponseGenerator.getAsyncUpdate(timeout, bcm));
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        assertTrue(results.stream().allMatch(DeferredResult::hasResult));
+        assertTrue(withheldTasks.isEmpty());
+
+        results.clear();
+        for (int i = 0; i < 3; i++)
+            results.add(ResponseGenerator.getAsyncUpdate(timeout, bcm));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        assertFalse(results.stream().anyMatch(DeferredResult::hasResult));
+
+        withheldTasks.forEach(Runnable::run);
+        assertTrue(results.stream().allMatch(DeferredResult::hasResult));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectEmptyChunks() {
+        FanOutPolicy.parallel(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNegativeInlineLimit() {
+        FanOutPolicy.parallel(10).withInlineLimit(-1);
+    }
+}
@@ -0,0 +1,111 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests replies in additional formats, selected by the Accept header of the client.
+ */
+public class FormatNegotiationTest {
+
+    private static final String CBOR = "application/cbor";
+    private static final String SMILE = "application/x-jackson-smile";
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        bcm.registerFormat(CBOR, cborMapper);
+        bcm.registerFormat(SMILE, new ObjectMapper(new SmileFactory()));
+    }
+
+    /**
+     * Clients requesting CBOR receive the CBOR serialization, declared by the content type.
+     */
+    @Test
+    public void replyInRequestedFormat() throws IOException {
+        ResponseEntity<byte[]> reply = reply(bcm.getContentVersion() - 1, CBOR);
+        assertEquals(MediaType.parseMediaType(CBOR), reply.getHeaders().getContentType());
+        JsonNode decoded = cborMapper.readTree(reply.getBody());
+        assertEquals("A", decoded.get("content").asText());
+    }
+
+    /**
+     * The format is selected by quality value, JSON is used without Accept header or on wildcards.
+     */
+    @Test
+    public void selectPreferredFormat() {
+        assertEquals(MediaType.parseMediaType(SMILE),
+                reply(0, CBOR + ";q=0.5, " + SMILE).getHeaders().getContentType());
+        assertEquals(MediaType.APPLICATION_JSON_UTF8, reply(0, null).getHeaders().getContentType());
+        assertEquals(MediaType.APPLICATION_JSON_UTF8, reply(0, "*/*").getHeaders().getContentType());
+        assertEquals(MediaType.APPLICATION_JSON_UTF8,
+                reply(0, "application/json, " + CBOR).getHeaders().getContentType());
+        assertEquals(bcm.getCurrentSnapshot().getSerializedContent().getSerialized(),
+                new String(reply(0, null).getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Each format is serialized once per version and shared by all clients.
+     */
+    @Test
+    public void serializeOncePerFormat() {
+        assertSame(reply(0, CBOR).getBody(), reply(0, CBOR).getBody());
+    }
+
+    /**
+     * The hash is the hash of the JSON serialization for all formats, so a CBOR client holding the current JSON hash
+     * has to wait for the next update.
+     */
+    @Test
+    public void hashIndependentOfFormat() {
+        DeferredResult<ResponseEntity<byte[]>> result = ByteResponseGenerator.getNegotiatedHashBasedUpdate(timeout,
+                bcm, bcm.getContentHash(), CBOR);
+        assertFalse(result.hasResult());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        assertEquals(MediaType.parseMediaType(CBOR),
+                ((ResponseEntity<byte[]>) result.getResult()).getHeaders().getContentType());
+    }
+
+    /**
+     * Clients that accept no available format receive a 406.
+     */
+    @Test
+    public void rejectUnavailableFormat() {
+        DeferredResult<ResponseEntity<byte[]>> result = ByteResponseGenerator.getNegotiatedHashBasedUpdate(timeout,
+                bcm, "", "application/msgpack");
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, ((ResponseEntity<?>) result.getResult()).getStatusCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectJsonFormat() {
+        bcm.registerFormat("application/json", cborMapper);
+    }
+
+    private ResponseEntity<byte[]> reply(long clientVersion, String accept) {
+        return (ResponseEntity<byte[]>) ByteResponseGenerator.getNegotiatedVersionBasedUpdate(timeout, bcm,
+                clientVersion, accept).getResult();
+    }
+}
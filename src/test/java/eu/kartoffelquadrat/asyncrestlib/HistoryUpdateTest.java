@@ -0,0 +1,105 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests catch-up updates, based on the history of recent content versions.
+ */
+public class HistoryUpdateTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        bcm.setHistoryCapacity(3);
+    }
+
+    /**
+     * A client that missed intermediate versions receives all of them, oldest first.
+     */
+    @Test
+    public void catchUpOnMissedVersions() throws IOException {
+        long clientVersion = bcm.getContentVersion();
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+
+        ResponseEntity<String> responseEntity =
+                (ResponseEntity<String>) ResponseGenerator.getUpdatesSince(timeout, bcm, clientVersion).getResult();
+        assertEquals("false", responseEntity.getHeaders().getFirst(ResponseGenerator.RESYNC_HEADER));
+        assertEquals(String.valueOf(clientVersion + 2),
+                responseEntity.getHeaders().getFirst(ResponseGenerator.VERSION_HEADER));
+
+        JsonNode entries = new ObjectMapper().readTree(responseEntity.getBody());
+        assertEquals(2, entries.size());
+        assertEquals(clientVersion + 1, entries.get(0).get("version").asLong());
+        assertEquals("B", entries.get(0).get("content").get("content").asText());
+        assertEquals("C", entries.get(1).get("content").get("content").asText());
+    }
+
+    /**
+     * A client whose version was already evicted only receives the current content, flagged as resync.
+     */
+    @Test
+    public void resyncOnEvictedVersion() throws IOException {
+        long clientVersion = bcm.getContentVersion();
+        for (String content : new String[]{"B", "C", "D", "E"})
+            bcm.updateBroadcastContent(new StringBroadcastContent(content));
+
+        ResponseEntity<String> responseEntity =
+                (ResponseEntity<String>) ResponseGenerator.getUpdatesSince(timeout, bcm, clientVersion).getResult();
+        assertEquals("true", responseEntity.getHeaders().getFirst(ResponseGenerator.RESYNC_HEADER));
+
+        JsonNode entries = new ObjectMapper().readTree(responseEntity.getBody());
+        assertEquals(1, entries.size());
+        assertEquals(bcm.getContentVersion(), entries.get(0).get("version").asLong());
+        assertEquals("E", entries.get(0).get("content").get("content").asText());
+    }
+
+    /**
+     * A client with the current version waits for the next version.
+     */
+    @Test
+    public void asynchronousCatchUp() throws IOException {
+        DeferredResult<ResponseEntity<String>> result =
+                ResponseGenerator.getUpdatesSince(timeout, bcm, bcm.getContentVersion());
+        assertFalse(result.hasResult());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        JsonNode entries = new ObjectMapper().readTree(((ResponseEntity<String>) result.getResult()).getBody());
+        assertEquals(1, entries.size());
+        assertEquals("B", entries.get(0).get("content").get("content").asText());
+    }
+
+    /**
+     * Without history, every catch-up is a resync.
+     */
+    @Test
+    public void resyncWithoutHistory() {
+        bcm.setHistoryCapacity(0);
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+
+        ResponseEntity<String> responseEntity =
+                (ResponseEntity<String>) ResponseGenerator.getUpdatesSince(timeout, bcm, 0).getResult();
+        assertEquals("true", responseEntity.getHeaders().getFirst(ResponseGenerator.RESYNC_HEADER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNegativeCapacity() {
+        bcm.setHistoryCapacity(-1);
+    }
+}
@@ -0,0 +1,360 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imitates a large amount of HTTP long-poll clients, for load tests. Other than the StringResponseCollectingClient,
+ * which calls the ResponseGenerator directly, these clients talk HTTP/1.1 to a server on a keep-alive connection each.
+ * Every client asks for updates of the version it last received in the ARL-Content-Version header and immediately
+ * polls again after each reply. All clients are driven by a single thread with non-blocking sockets, so the amount of
+ * clients is only bound by the available file descriptors and local ports.
+ * <p>
+ * The time each client received each version is recorded, so the update-to-client latency can be told once the
+ * publication times of the versions are known.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class LongPollClientPool implements Closeable {
+
+    // connections opened at once, so the server accept backlog does not overflow.
+    private static final int MAX_PENDING_CONNECTS = 256;
+    private static final byte[] LINE_END = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final InetSocketAddress server;
+    private final String pollPath;
+    private final int clientCount;
+    private final long initialVersion;
+    private final Selector selector;
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+
+    // amount of clients that received a version, for progress checks while the pool is running.
+    private final Map<Long, AtomicInteger> receivedPerVersion = new ConcurrentHashMap<>();
+    private final AtomicInteger failedReplies = new AtomicInteger();
+    private final AtomicInteger reconnects = new AtomicInteger();
+
+    // fields below are only accessed by the selector thread, or after it terminated.
+    private final Deque<Client> reconnectQueue = new ArrayDeque<>();
+    private int openedClients;
+    private int pendingConnects;
+    private long[] receivedVersions = new long[1024];
+    private long[] receiptTimes = new long[1024];
+    private int receiptCount;
+
+    /**
+     * Opens the connections and starts polling.
+     *
+     * @param server         as the address of the server to poll.
+     * @param pollPath       as the request path, the version held by the client is appended, e.g. "/poll?version=".
+     * @param clientCount    as the amount of clients to imitate.
+     * @param initialVersion as the version all clients initially hold.
+     * @throws IOException if the selector can not be opened.
+     */
+    LongPollClientPool(InetSocketAddress server, String pollPath, int clientCount, long initialVersion)
+            throws IOException {
+        this.server = server;
+        this.pollPath = pollPath;
+        this.clientCount = clientCount;
+        this.initialVersion = initialVersion;
+        selector = Selector.open();
+        selectorThread = new Thread(this::run, "long-poll-clients");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * @param version as the content version.
+     * @return the amount of clients that received the version so far.
+     */
+    int getReceivedCount(long version) {
+        AtomicInteger count = receivedPerVersion.get(version);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the amount of replies that were neither an update nor a timeout.
+     */
+    int getFailedReplyCount() {
+        return failedReplies.get();
+    }
+
+    /**
+     * @return the amount of connections that were closed and opened again, e.g. after the server limited the requests
+     * per connection.
+     */
+    int getReconnectCount() {
+        return reconnects.get();
+    }
+
+    /**
+     * Returns the time between publication and receipt, for every received version with known publication time. Must
+     * only be called after the pool was closed.
+     *
+     * @param publicationTimes as the System.nanoTime() of publication, per version.
+     * @return the latencies in nanoseconds, unsorted.
+     */
+    long[] getLatencies(Map<Long, Long> publicationTimes) {
+        if (selectorThread.isAlive())
+            throw new IllegalStateException("Latencies can only be collected from a closed pool.");
+        long[] latencies = new long[receiptCount];
+        int latencyCount = 0;
+        for (int i = 0; i < receiptCount; i++) {
+            Long publicationTime = publicationTimes.get(receivedVersions[i]);
+            if (publicationTime != null)
+                latencies[latencyCount++] = receiptTimes[i] - publicationTime;
+        }
+        return Arrays.copyOf(latencies, latencyCount);
+    }
+
+    /**
+     * Stops polling and closes all connections.
+     *
+     * @throws IOException if the client thread failed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                openConnections();
+                selector.select(100);
+                long now = System.nanoTime();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isConnectable())
+                            client.connected();
+                        else {
+                            if (key.isWritable())
+                                client.write();
+                            if (key.isValid() && key.isReadable())
+                                client.read(now);
+                        }
+                    } catch (IOException e) {
+                        client.reconnect();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            for (SelectionKey key : selector.keys())
+                closeQuietly(key.channel());
+            closeQuietly(selector);
+        }
+    }
+
+    private void openConnections() throws IOException {
+        while (pendingConnects < MAX_PENDING_CONNECTS && (!reconnectQueue.isEmpty() || openedClients < clientCount)) {
+            Client client = reconnectQueue.poll();
+            if (client == null) {
+                client = new Client(initialVersion);
+                openedClients++;
+            }
+            client.connect();
+        }
+    }
+
+    private void recordReceipt(long version, long time) {
+        if (receiptCount == receivedVersions.length) {
+            receivedVersions = Arrays.copyOf(receivedVersions, receiptCount * 2);
+            receiptTimes = Arrays.copyOf(receiptTimes, receiptCount * 2);
+        }
+        receivedVersions[receiptCount] = version;
+        receiptTimes[receiptCount++] = time;
+        receivedPerVersion.computeIfAbsent(version, key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++)
+                if (data[i + j] != pattern[j])
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of a chunked body, or -1 if it was not fully received yet. Trailers are not supported.
+     */
+    private static int chunkedBodyEnd(byte[] data, int from, int to) {
+        int position = from;
+        while (true) {
+            int lineEnd = indexOf(data, position, to, LINE_END);
+            if (lineEnd < 0)
+                return -1;
+            String sizeLine = new String(data, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int extension = sizeLine.indexOf(';');
+            int size = Integer.parseInt((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+            position = lineEnd + LINE_END.length;
+            if (size == 0)
+                return position + LINE_END.length <= to ? position + LINE_END.length : -1;
+            position += size + LINE_END.length;
+            if (position > to)
+                return -1;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing to do, the connection is abandoned anyway
+        }
+    }
+
+    /**
+     * A single long-poll client with its connection.
+     */
+    private class Client {
+
+        private long version;
+        private boolean connecting;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request;
+        private ByteBuffer response = ByteBuffer.allocate(512);
+
+        Client(long version) {
+            this.version = version;
+        }
+
+        void connect() throws IOException {
+            connecting = true;
+            pendingConnects++;
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            key = channel.register(selector, 0, this);
+            if (channel.connect(server))
+                connected();
+            else
+                key.interestOps(SelectionKey.OP_CONNECT);
+        }
+
+        void connected() throws IOException {
+            connecting = false;
+            pendingConnects--;
+            channel.finishConnect();
+            poll();
+        }
+
+        void poll() throws IOException {
+            request = ByteBuffer.wrap(("GET " + pollPath + version + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            write();
+        }
+
+        void write() throws IOException {
+            channel.write(request);
+            key.interestOps(request.hasRemaining() ? SelectionKey.OP_WRITE | SelectionKey.OP_READ :
+                    SelectionKey.OP_READ);
+        }
+
+        void read(long now) throws IOException {
+            if (!response.hasRemaining())
+                response = ByteBuffer.allocate(response.capacity() * 2).put((ByteBuffer) response.flip());
+            if (channel.read(response) < 0) {
+                reconnect();
+                return;
+            }
+            parseResponse(now);
+        }
+
+        /**
+         * Handles the buffered response if it was fully received.
+         */
+        private void parseResponse(long now) throws IOException {
+            byte[] data = response.array();
+            int length = response.position();
+            int headerEnd = indexOf(data, 0, length, HEADER_END);
+            if (headerEnd < 0)
+                return;
+
+            String[] lines = new String(data, 0, headerEnd, StandardCharsets.US_ASCII).split("\r\n");
+            int status = Integer.parseInt(lines[0].substring(9, 12));
+            int contentLength = 0;
+            boolean chunked = false;
+            boolean close = false;
+            long replyVersion = -1;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length"))
+                    contentLength = Integer.parseInt(value);
+                else if (name.equalsIgnoreCase("Transfer-Encoding"))
+                    chunked = value.equalsIgnoreCase("chunked");
+                else if (name.equalsIgnoreCase("Connection"))
+                    close = value.equalsIgnoreCase("close");
+                else if (name.equalsIgnoreCase(ResponseGenerator.VERSION_HEADER))
+                    replyVersion = Long.parseLong(value);
+            }
+
+            int bodyStart = headerEnd + HEADER_END.length;
+            int bodyEnd = chunked ? chunkedBodyEnd(data, bodyStart, length) : bodyStart + contentLength;
+            if (bodyEnd < 0 || bodyEnd > length)
+                return;
+            response.clear();
+
+            if (status == 200 && replyVersion >= 0) {
+                version = replyVersion;
+                recordReceipt(replyVersion, now);
+            } else if (status != 408)
+                failedReplies.incrementAndGet();
+
+            if (close)
+                reconnect();
+            else
+                poll();
+        }
+
+        /**
+         * Drops the connection, a new one is opened and the poll repeated as soon as possible.
+         */
+        void reconnect() {
+            if (connecting) {
+                connecting = false;
+                pendingConnects--;
+            }
+            key.cancel();
+            closeQuietly(channel);
+            response.clear();
+            reconnects.incrementAndGet();
+            reconnectQueue.add(this);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * End-to-end load test: an embedded Spring Boot app serves version-based long-polls of a single manager, a pool of
+ * simulated clients keeps polling over loopback while updates are published. The same scenario runs once with
+ * blocking-thread and once with event-driven dispatch, so both can be compared on one machine. Each run reports the
+ * update-to-client latency percentiles, the reply throughput, and the threads and heap in use while all clients wait.
+ * <p>
+ * Only runs in the loadtest maven profile: mvn test -Ploadtest. The amount of clients and updates can be set with the
+ * system properties loadtest.clients and loadtest.updates. Every client takes two file descriptors in this JVM (client
+ * and server side of the connection).
+ *
+ * @author Maximilian Schiedermeier
+ */
+public class LongPollLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 10000);
+    private static final int UPDATES = Integer.getInteger("loadtest.updates", 20);
+    private static final long LONG_POLL_TIMEOUT = 60000;
+    private static final Duration ROUND_TIMEOUT = Duration.ofMinutes(2);
+
+    // manager of the currently running app
+    private static BroadcastContentManager<StringBroadcastContent> bcm;
+
+    @Test
+    public void blockingThreadDispatch() throws Exception {
+        runScenario(false);
+    }
+
+    @Test
+    public void eventDrivenDispatch() throws Exception {
+        runScenario(true);
+    }
+
+    private void runScenario(boolean eventDriven) throws Exception {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("0"));
+        if (eventDriven)
+            bcm.enableEventDrivenNotification();
+
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(LoadTestApplication.class)
+                .properties("server.port=0", "server.tomcat.max-connections=" + (CLIENTS + 100),
+                        "spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run();
+        try {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            LongPollClientPool clients = new LongPollClientPool(new InetSocketAddress("127.0.0.1", port),
+                    "/poll?version=", CLIENTS, bcm.getContentVersion());
+            try {
+                measure(clients, eventDriven);
+            } finally {
+                // release the requests still pending for closed clients
+                clients.close();
+                bcm.terminate();
+                await().atMost(ROUND_TIMEOUT).until(() -> bcm.getPendingWaiterCount() == 0);
+            }
+        } finally {
+            app.close();
+        }
+    }
+
+    private void measure(LongPollClientPool clients, boolean eventDriven) throws Exception {
+        Map<Long, Long> publicationTimes = new ConcurrentHashMap<>();
+
+        // all clients wait for the first update
+        awaitAllClientsWaiting();
+        System.gc();
+        int waitingThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long waitingHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        // publish updates one by one, each after all clients received the previous one and polled again
+        long deliveryTime = 0;
+        for (int update = 1; update <= UPDATES; update++) {
+            long publicationTime = System.nanoTime();
+            bcm.updateBroadcastContent(new StringBroadcastContent(Integer.toString(update)));
+            long version = bcm.getContentVersion();
+            publicationTimes.put(version, publicationTime);
+            await().atMost(ROUND_TIMEOUT).until(() -> clients.getReceivedCount(version) == CLIENTS);
+            deliveryTime += System.nanoTime() - publicationTime;
+            awaitAllClientsWaiting();
+        }
+        clients.close();
+
+        long[] latencies = clients.getLatencies(publicationTimes);
+        Arrays.sort(latencies);
+        System.out.printf("%nLong-poll load test, %s dispatch, %d clients, %d updates%n",
+                eventDriven ? "event-driven" : "blocking-thread", CLIENTS, UPDATES);
+        System.out.printf("  while waiting: %d threads, %.1f MB heap used%n", waitingThreads,
+                waitingHeap / 1048576.0);
+        System.out.printf("  replies: %d, %.0f per second, %d failed, %d reconnects%n", latencies.length,
+                latencies.length / (deliveryTime / 1e9), clients.getFailedReplyCount(), clients.getReconnectCount());
+        System.out.printf("  latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+
+        assertEquals(CLIENTS * UPDATES, latencies.length);
+        assertEquals(0, clients.getFailedReplyCount());
+    }
+
+    private void awaitAllClientsWaiting() {
+        await().atMost(ROUND_TIMEOUT).until(() -> bcm.getPendingWaiterCount() == CLIENTS);
+    }
+
+    /**
+     * @return the percentile of the sorted latencies, in milliseconds.
+     */
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    /**
+     * Embedded app with a single long-poll endpoint. Only the auto-configuration and the controller below are loaded,
+     * no component scan.
+     */
+    @Configuration
+    @EnableAutoConfiguration
+    @Import(PollController.class)
+    static class LoadTestApplication {
+    }
+
+    @RestController
+    static class PollController {
+
+        @GetMapping("/poll")
+        public DeferredResult<ResponseEntity<String>> poll(@RequestParam long version) {
+            return ResponseGenerator.getVersionBasedUpdate(LONG_POLL_TIMEOUT, bcm, version);
+        }
+    }
+}
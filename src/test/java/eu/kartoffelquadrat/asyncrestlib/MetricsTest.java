@@ -0,0 +1,123 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the meters published by MicrometerMetrics.
+ */
+public class MetricsTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private MeterRegistry registry;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        bcm.enableEventDrivenNotification();
+        registry = new SimpleMeterRegistry();
+        MicrometerMetrics.bind(bcm, registry, "chat");
+    }
+
+    /**
+     * Managers without bound metrics must not measure anything.
+     */
+    @Test
+    public void noopByDefault() {
+        BroadcastContentManager<StringBroadcastContent> unbound =
+                new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        assertSame(ManagerMetrics.NOOP, unbound.getMetrics());
+        assertEquals(0, ManagerMetrics.NOOP.startTimer());
+    }
+
+    /**
+     * Synchronous and deferred replies are counted separately, deferred ones also report their delivery latency.
+     */
+    @Test
+    public void countImmediateAndDeferredReplies() {
+        ResponseGenerator.getHashBasedUpdate(timeout, bcm, "");
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        assertEquals(1, registry.get("arl.waiters.active").tag("manager", "chat").gauge().value(), 0);
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+
+        assertEquals(1, registry.get("arl.replies").tag("reply", "immediate").counter().count(), 0);
+        assertEquals(1, registry.get("arl.replies").tag("reply", "deferred").counter().count(), 0);
+        assertEquals(1, registry.get("arl.delivery.latency").timer().count());
+        await().atMost(Duration.ofMillis(500)).until(() -> registry.get("arl.fanout").timer().count() == 1);
+    }
+
+    /**
+     * Serialization, hashing and transformation of published content are timed.
+     */
+    @Test
+    public void timeContentProcessing() {
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        ResponseGenerator.getTransformedUpdate(timeout, bcm, "", (content, tag) -> content, null);
+
+        assertTrue(registry.get("arl.serialization").timer().count() >= 1);
+        assertTrue(registry.get("arl.hash").timer().count() >= 1);
+        assertEquals(1, registry.get("arl.transform").timer().count());
+    }
+
+    /**
+     * Hashes of custom content, streamed without a prior serialization, are timed as well.
+     */
+    @Test
+    public void timeCustomContentHash() {
+        bcm.getHashOfCustomContentUsingAssociatedSerializer(new StringBroadcastContent("B"));
+
+        assertEquals(1, registry.get("arl.hash").timer().count());
+    }
+
+    /**
+     * Snapshots captured before metrics were bound carry no publication time. Any other timer value is valid, as
+     * System.nanoTime() has an arbitrary origin and may as well return 0 or negative values.
+     */
+    @Test
+    public void publicationTimeOnlyTakenWithBoundMetrics() {
+        BroadcastContentManager<StringBroadcastContent> unbound =
+                new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        assertFalse(unbound.getCurrentSnapshot().hasPublicationTime());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        assertTrue(bcm.getCurrentSnapshot().hasPublicationTime());
+        bcm.getMetrics().delivered(0);
+        assertEquals(1, registry.get("arl.delivery.latency").timer().count());
+    }
+
+    /**
+     * Timeouts and terminations are counted by status.
+     */
+    @Test
+    public void countTimeoutsAndTerminations() throws Exception {
+        DeferredResult<ResponseEntity<String>> timedOut = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        Field timeoutCallback = DeferredResult.class.getDeclaredField("timeoutCallback");
+        timeoutCallback.setAccessible(true);
+        ((Runnable) timeoutCallback.get(timedOut)).run();
+        assertEquals(1, registry.get("arl.timeouts").counter().count(), 0);
+
+        DeferredResult<ResponseEntity<String>> pending = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        bcm.terminate();
+        await().atMost(Duration.ofMillis(500)).until(pending::hasResult);
+        ResponseGenerator.getAsyncUpdate(timeout, bcm);
+
+        assertEquals(1, registry.get("arl.terminations").tag("status", "204").counter().count(), 0);
+        assertEquals(1, registry.get("arl.terminations").tag("status", "410").counter().count(), 0);
+    }
+}
@@ -0,0 +1,98 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests long-polls that observe multiple BroadcastContentManagers at once.
+ */
+public class MultiplexedUpdateTest {
+
+    private final Map<String, BroadcastContentManager<StringBroadcastContent>> bcms = new LinkedHashMap<>();
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        for (int i = 0; i < 50; i++)
+            bcms.put("resource-" + i, new BroadcastContentManager<>(new StringBroadcastContent("initial-" + i)));
+    }
+
+    /**
+     * Resources the client holds no state for are listed right away.
+     */
+    @Test
+    public void synchronousInitialState() throws IOException {
+        DeferredResult<ResponseEntity<String>> result =
+                ResponseGenerator.getMultiplexedUpdate(timeout, bcms, new HashMap<>());
+        JsonNode body = parse(result);
+        assertEquals(50, body.size());
+        assertEquals("initial-7", body.get("resource-7").get("content").get("content").asText());
+        assertEquals(bcms.get("resource-7").getContentHash(), body.get("resource-7").get("hash").asText());
+    }
+
+    /**
+     * A client up to date on all resources is notified as soon as any of them changes, and only receives the changed
+     * resource.
+     */
+    @Test
+    public void asynchronousUpdateOfSingleResource() throws IOException {
+        Map<String, String> hashes = new HashMap<>();
+        bcms.forEach((id, bcm) -> hashes.put(id, bcm.getContentHash()));
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getMultiplexedUpdate(timeout, bcms, hashes);
+        assertFalse(result.hasResult());
+        assertEquals(1, bcms.get("resource-42").getPendingWaiterCount());
+
+        bcms.get("resource-42").updateBroadcastContent(new StringBroadcastContent("changed"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        JsonNode body = parse(result);
+        assertEquals(1, body.size());
+        assertEquals("changed", body.get("resource-42").get("content").get("content").asText());
+
+        // The waiter is released at all managers.
+        for (BroadcastContentManager<StringBroadcastContent> bcm : bcms.values())
+            assertEquals(0, bcm.getPendingWaiterCount());
+    }
+
+    /**
+     * Version based multiplexing, including terminated resources.
+     */
+    @Test
+    public void versionBasedWithTermination() throws IOException {
+        Map<String, Long> versions = new HashMap<>();
+        bcms.forEach((id, bcm) -> versions.put(id, bcm.getContentVersion()));
+        DeferredResult<ResponseEntity<String>> result =
+                ResponseGenerator.getMultiplexedVersionBasedUpdate(timeout, bcms, versions);
+        assertFalse(result.hasResult());
+
+        bcms.get("resource-3").terminate();
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        JsonNode body = parse(result);
+        assertTrue(body.get("resource-3").get("terminated").asBoolean());
+        assertFalse(body.get("resource-3").has("content"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectEmptyManagers() {
+        ResponseGenerator.getMultiplexedUpdate(timeout, new HashMap<String, BroadcastContentManager<?>>(),
+                new HashMap<>());
+    }
+
+    private static JsonNode parse(DeferredResult<ResponseEntity<String>> result) throws IOException {
+        return new ObjectMapper().readTree(((ResponseEntity<String>) result.getResult()).getBody());
+    }
+}
@@ -0,0 +1,57 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that the multi-release section of the library jar is picked up on Java 21+ runtimes. Only runs in the
+ * multi-release maven profile, against the packaged jar. The test itself is compiled for Java 8, so Thread.isVirtual
+ * is looked up at runtime.
+ */
+public class NotifyThreadFactoriesIT {
+
+    /**
+     * The default factory creates virtual threads.
+     */
+    @Test
+    public void defaultFactoryCreatesVirtualThreads() throws Exception {
+        assertTrue(isVirtual(NotifyThreadFactories.defaultFactory().newThread(() -> {
+        })));
+    }
+
+    /**
+     * With the default factory, pending requests are evaluated on virtual threads. The transformer records the threads
+     * it is called on: once by the request thread, then by the wait thread on the update.
+     */
+    @Test
+    public void pendingRequestsWaitOnVirtualThreads() throws Exception {
+        Queue<Thread> transformingThreads = new ConcurrentLinkedQueue<>();
+        Transformer<StringBroadcastContent> recorder = (content, tag) -> {
+            transformingThreads.add(Thread.currentThread());
+            return content;
+        };
+        BroadcastContentManager<StringBroadcastContent> bcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getTransformedUpdate(5000, bcm,
+                bcm.getContentHash(), recorder, "");
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        boolean evaluatedOnVirtualThread = false;
+        for (Thread thread : transformingThreads)
+            evaluatedOnVirtualThread |= isVirtual(thread);
+        assertTrue(evaluatedOnVirtualThread);
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+}
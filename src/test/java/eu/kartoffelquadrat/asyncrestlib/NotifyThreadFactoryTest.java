@@ -0,0 +1,66 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that pending requests are served by threads of the configured notify thread factory.
+ */
+public class NotifyThreadFactoryTest {
+
+    @After
+    public void restoreDefaultFactory() {
+        ResponseGenerator.resetNotifyThreadFactory();
+    }
+
+    /**
+     * Verify a custom factory is used for wait threads and the created thread completes the result.
+     */
+    @Test
+    public void customFactoryCreatesWaitThreads() {
+        AtomicInteger createdThreads = new AtomicInteger();
+        ResponseGenerator.setNotifyThreadFactory(runnable -> {
+            createdThreads.incrementAndGet();
+            return new Thread(runnable);
+        });
+
+        BroadcastContentManager<StringBroadcastContent> bcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getAsyncUpdate(5000, bcm);
+        assertEquals(1, createdThreads.get());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+    }
+
+    /**
+     * Event-driven managers must not create any wait threads.
+     */
+    @Test
+    public void eventDrivenManagerCreatesNoWaitThreads() {
+        AtomicInteger createdThreads = new AtomicInteger();
+        ResponseGenerator.setNotifyThreadFactory(runnable -> {
+            createdThreads.incrementAndGet();
+            return new Thread(runnable);
+        });
+
+        BroadcastContentManager<StringBroadcastContent> bcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        bcm.enableEventDrivenNotification();
+        ResponseGenerator.getAsyncUpdate(5000, bcm);
+        assertEquals(0, createdThreads.get());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectNullFactory() {
+        ResponseGenerator.setNotifyThreadFactory(null);
+    }
+}
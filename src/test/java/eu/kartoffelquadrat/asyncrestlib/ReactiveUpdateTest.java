@@ -0,0 +1,152 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the reactive variants of long-polls and streams.
+ */
+public class ReactiveUpdateTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+    }
+
+    /**
+     * An outdated hash results in an immediate reply.
+     */
+    @Test
+    public void synchronousUpdate() {
+        ResponseEntity<String> reply = ReactiveResponseGenerator.getHashBasedUpdate(timeout, bcm, "").block();
+        assertEquals(200, reply.getStatusCodeValue());
+        assertTrue(reply.getBody().contains("A"));
+    }
+
+    /**
+     * Long-polls are completed by the next update, without blocking a thread while waiting. This also holds for
+     * managers without event-driven notification.
+     */
+    @Test
+    public void asynchronousUpdate() {
+        AtomicReference<ResponseEntity<String>> reply = new AtomicReference<>();
+        ReactiveResponseGenerator.getAsyncUpdate(timeout, bcm).subscribe(reply::set);
+        assertNull(reply.get());
+        assertEquals(1, bcm.getPendingWaiterCount());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> reply.get() != null);
+        assertTrue(reply.get().getBody().contains("B"));
+        assertEquals("2", reply.get().getHeaders().getFirst(ResponseGenerator.VERSION_HEADER));
+        assertEquals(0, bcm.getPendingWaiterCount());
+    }
+
+    /**
+     * Timed out long-polls result in a 408 and are released.
+     */
+    @Test
+    public void timeout() {
+        ResponseEntity<String> reply =
+                ReactiveResponseGenerator.getVersionBasedUpdate(100, bcm, bcm.getContentVersion()).block();
+        assertEquals(408, reply.getStatusCodeValue());
+        assertEquals(0, bcm.getPendingWaiterCount());
+    }
+
+    /**
+     * Termination results in a 204 for pending long-polls and a 410 for new ones.
+     */
+    @Test
+    public void termination() {
+        Mono<ResponseEntity<String>> pending = ReactiveResponseGenerator.getAsyncUpdate(timeout, bcm).cache();
+        pending.subscribe();
+        bcm.terminate();
+
+        assertEquals(204, pending.block(Duration.ofMillis(500)).getStatusCodeValue());
+        assertEquals(410, ReactiveResponseGenerator.getAsyncUpdate(timeout, bcm).block().getStatusCodeValue());
+    }
+
+    /**
+     * The manager state is evaluated on subscription, not when the Mono is created.
+     */
+    @Test
+    public void lateSubscription() {
+        Mono<ResponseEntity<String>> reply = ReactiveResponseGenerator.getAsyncUpdate(timeout, bcm);
+        bcm.terminate();
+        assertEquals(410, reply.block(Duration.ofMillis(500)).getStatusCodeValue());
+    }
+
+    /**
+     * Long-polls only await updates after the subscription, so a Mono subscribed late or again does not replay an
+     * update published before.
+     */
+    @Test
+    public void lateSubscriptionAwaitsNextUpdate() {
+        Mono<ResponseEntity<String>> reply = ReactiveResponseGenerator.getAsyncUpdate(timeout, bcm);
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+
+        for (String update : new String[]{"C", "D"}) {
+            AtomicReference<ResponseEntity<String>> subscriptionReply = new AtomicReference<>();
+            reply.subscribe(subscriptionReply::set);
+            assertNull(subscriptionReply.get());
+            assertEquals(1, bcm.getPendingWaiterCount());
+
+            bcm.updateBroadcastContent(new StringBroadcastContent(update));
+            await().atMost(Duration.ofMillis(500)).until(() -> subscriptionReply.get() != null);
+            assertTrue(subscriptionReply.get().getBody().contains(update));
+        }
+    }
+
+    /**
+     * Streams emit every update and release their registration on cancel.
+     */
+    @Test
+    public void stream() {
+        List<ServerSentEvent<String>> events = new CopyOnWriteArrayList<>();
+        Disposable subscription = ReactiveResponseGenerator.getUpdateStream(bcm).subscribe(events::add);
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> events.size() == 1);
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        await().atMost(Duration.ofMillis(500)).until(() -> events.size() == 2);
+        assertEquals("3", events.get(1).id());
+        assertTrue(events.get(1).data().contains("C"));
+
+        subscription.dispose();
+        assertEquals(0, bcm.getPendingWaiterCount());
+    }
+
+    /**
+     * Transformed streams only emit non-empty states and complete once the manager is terminated.
+     */
+    @Test
+    public void transformedStreamCompletesOnTermination() {
+        List<ServerSentEvent<String>> events = new CopyOnWriteArrayList<>();
+        AtomicReference<Boolean> completed = new AtomicReference<>(false);
+        ReactiveResponseGenerator.getTransformedUpdateStream(bcm, "", new EraserTransformer(), "B")
+                .subscribe(events::add, error -> {
+                }, () -> completed.set(true));
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> events.size() == 1);
+        bcm.terminate();
+        await().atMost(Duration.ofMillis(500)).until(completed::get);
+        assertEquals(1, events.size());
+    }
+}
@@ -0,0 +1,133 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the randomized request timeouts and the suggested re-poll delays. The timeout callback is usually invoked by
+ * the servlet container, which is not present in these tests. Therefore the tests signal the timeout on a simulated
+ * async request.
+ */
+public class RepollPacingTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 10000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        bcm.enableEventDrivenNotification();
+    }
+
+    @After
+    public void restoreDefaults() {
+        ResponseGenerator.setTimeoutJitter(0);
+        ResponseGenerator.disableRepollDelay();
+    }
+
+    /**
+     * Jittered timeouts are spread below the requested timeout.
+     */
+    @Test
+    public void jitterShortensTimeout() throws Exception {
+        assertEquals(timeout, timeoutOf(ResponseGenerator.getAsyncUpdate(timeout, bcm)));
+
+        ResponseGenerator.setTimeoutJitter(0.5);
+        Set<Long> timeouts = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            long jitteredTimeout = timeoutOf(ResponseGenerator.getAsyncUpdate(timeout, bcm));
+            assertTrue(jitteredTimeout >= timeout / 2 && jitteredTimeout <= timeout);
+            timeouts.add(jitteredTimeout);
+        }
+        assertTrue(timeouts.size() > 1);
+    }
+
+    /**
+     * Without configured delay, replies carry no re-poll header.
+     */
+    @Test
+    public void noHintByDefault() {
+        ResponseEntity<?> reply = (ResponseEntity<?>) ResponseGenerator.getHashBasedUpdate(timeout, bcm, "outdated")
+                .getResult();
+        assertNull(reply.getHeaders().getFirst(ResponseGenerator.REPOLL_HEADER));
+    }
+
+    /**
+     * 200 and 408 replies of an idle node suggest the minimum delay.
+     */
+    @Test
+    public void minimumDelayWhenIdle() throws Exception {
+        ResponseGenerator.setRepollDelay(200, 5000);
+
+        ResponseEntity<?> update = (ResponseEntity<?>) ResponseGenerator.getHashBasedUpdate(timeout, bcm, "outdated")
+                .getResult();
+        assertEquals("200", update.getHeaders().getFirst(ResponseGenerator.REPOLL_HEADER));
+
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        SimulatedAsyncRequest.of(result).timeout();
+        ResponseEntity<?> timedOut = (ResponseEntity<?>) result.getResult();
+        assertEquals(408, timedOut.getStatusCodeValue());
+        assertEquals("200", timedOut.getHeaders().getFirst(ResponseGenerator.REPOLL_HEADER));
+    }
+
+    /**
+     * The suggested delay grows with the utilization of the manager, up to the maximum.
+     */
+    @Test
+    public void delayGrowsUnderLoad() {
+        ResponseGenerator.setRepollDelay(200, 5000);
+        bcm.setMaxPendingWaiters(10);
+        for (int i = 0; i < 10; i++)
+            ResponseGenerator.getAsyncUpdate(timeout, bcm);
+
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            ResponseEntity<?> reply = (ResponseEntity<?>) ResponseGenerator.getHashBasedUpdate(timeout, bcm,
+                    "outdated").getResult();
+            long delay = Long.parseLong(reply.getHeaders().getFirst(ResponseGenerator.REPOLL_HEADER));
+            assertTrue(delay >= 200 && delay <= 5000);
+            delays.add(delay);
+        }
+        assertTrue(delays.size() > 1);
+    }
+
+    /**
+     * Multiplexed replies carry the hint as well.
+     */
+    @Test
+    public void multiplexedHint() {
+        ResponseGenerator.setRepollDelay(300, 300);
+        ResponseEntity<?> reply = (ResponseEntity<?>) ResponseGenerator.getMultiplexedVersionBasedUpdate(timeout,
+                Collections.singletonMap("chat", bcm), Collections.singletonMap("chat", 0L)).getResult();
+        assertEquals(200, reply.getStatusCodeValue());
+        assertEquals("300", reply.getHeaders().getFirst(ResponseGenerator.REPOLL_HEADER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidJitter() {
+        ResponseGenerator.setTimeoutJitter(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidDelayBounds() {
+        ResponseGenerator.setRepollDelay(500, 100);
+    }
+
+    /**
+     * DeferredResult exposes its timeout to spring only, so it is read from the async request spring configures.
+     */
+    private static long timeoutOf(DeferredResult<?> result) throws Exception {
+        return SimulatedAsyncRequest.of(result).getTimeout();
+    }
+}
@@ -0,0 +1,121 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hands a DeferredResult or ResponseBodyEmitter to spring's async request processing on a mock servlet request, the
+ * same way spring does for the return value of a controller. Timeout, error and completion of the request are then
+ * signalled to the registered servlet async listeners, as a servlet container would do, so the callbacks the library
+ * registered on the DeferredResult or emitter run through public API only.
+ *
+ * @author Maximilian Schiedermeier
+ */
+class SimulatedAsyncRequest {
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final WebAsyncManager asyncManager;
+
+    private SimulatedAsyncRequest() {
+        request.setAsyncSupported(true);
+        asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+    }
+
+    /**
+     * Starts async processing of a deferred result, as if it had been returned by a controller.
+     */
+    static SimulatedAsyncRequest of(DeferredResult<?> deferredResult) throws Exception {
+        SimulatedAsyncRequest asyncRequest = new SimulatedAsyncRequest();
+        asyncRequest.asyncManager.startDeferredResultProcessing(deferredResult);
+        return asyncRequest;
+    }
+
+    /**
+     * Starts async processing of an emitter, as if it had been returned by a controller. Sent events are written to
+     * the mock response.
+     */
+    static SimulatedAsyncRequest of(ResponseBodyEmitter emitter) throws Exception {
+        SimulatedAsyncRequest asyncRequest = new SimulatedAsyncRequest();
+        ResponseBodyEmitterReturnValueHandler handler = new ResponseBodyEmitterReturnValueHandler(
+                Collections.singletonList(new StringHttpMessageConverter()));
+
+        // The return type is only inspected for reactive return values, not for emitters.
+        handler.handleReturnValue(emitter, null, new ModelAndViewContainer(),
+                new ServletWebRequest(asyncRequest.request, asyncRequest.response));
+        return asyncRequest;
+    }
+
+    /**
+     * Signals a timeout of the request.
+     */
+    void timeout() throws IOException {
+        for (AsyncListener listener : asyncContext().getListeners())
+            listener.onTimeout(new AsyncEvent(asyncContext()));
+    }
+
+    /**
+     * Signals an error of the request, e.g. a client disconnect.
+     */
+    void error(Throwable throwable) throws IOException {
+        for (AsyncListener listener : asyncContext().getListeners())
+            listener.onError(new AsyncEvent(asyncContext(), request, response, throwable));
+    }
+
+    /**
+     * Signals the completion of the request.
+     */
+    void complete() {
+        asyncContext().complete();
+    }
+
+    /**
+     * @return the timeout spring applied to the request, in milliseconds.
+     */
+    long getTimeout() {
+        return asyncContext().getTimeout();
+    }
+
+    /**
+     * @return true if spring received a result for the request, e.g. because an emitter was completed.
+     */
+    boolean hasResult() {
+        return asyncManager.hasConcurrentResult();
+    }
+
+    /**
+     * @return the data of all server-sent events written to the response so far, in the order they were sent.
+     */
+    List<String> getSentEventData() throws IOException {
+        List<String> eventData = new LinkedList<>();
+        for (String event : response.getContentAsString().split("\n\n")) {
+            for (String line : event.split("\n")) {
+                if (line.startsWith("data:"))
+                    eventData.add(line.substring("data:".length()));
+            }
+        }
+        return eventData;
+    }
+
+    private MockAsyncContext asyncContext() {
+        return (MockAsyncContext) request.getAsyncContext();
+    }
+}
@@ -0,0 +1,152 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests Server-Sent Events streams. Without servlet container, each emitter is handed to spring on a simulated async
+ * request. The tests inspect the events written to its response and signal timeouts on it.
+ */
+public class SseUpdateTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+    }
+
+    /**
+     * A stream pushes every future update, not only the first one.
+     */
+    @Test
+    public void pushEveryUpdate() throws Exception {
+        SimulatedAsyncRequest stream = SimulatedAsyncRequest.of(ResponseGenerator.getSseUpdates(timeout, bcm));
+        assertEquals(0, stream.getSentEventData().size());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> stream.getSentEventData().size() == 1);
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        await().atMost(Duration.ofMillis(500)).until(() -> stream.getSentEventData().size() == 2);
+        assertTrue(stream.getSentEventData().get(1).contains("C"));
+    }
+
+    /**
+     * Event-driven streams push every update as well, without a thread per stream.
+     */
+    @Test
+    public void pushEveryUpdateEventDriven() throws Exception {
+        bcm.enableEventDrivenNotification();
+        pushEveryUpdate();
+    }
+
+    /**
+     * A stream with outdated hash receives the current content right away. States identical by hash to the last
+     * pushed state are not pushed again.
+     */
+    @Test
+    public void suppressDuplicates() throws Exception {
+        SimulatedAsyncRequest stream = SimulatedAsyncRequest.of(
+                ResponseGenerator.getHashBasedSseUpdates(timeout, bcm, ""));
+        assertEquals(1, stream.getSentEventData().size());
+
+        // new version, same content
+        bcm.touch();
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> stream.getSentEventData().size() == 2);
+        assertTrue(stream.getSentEventData().get(1).contains("B"));
+    }
+
+    /**
+     * Transformed states are only pushed if non-empty. The intermediate states of back to back updates are retained,
+     * so each of them is evaluated.
+     */
+    @Test
+    public void transformedStream() throws Exception {
+        bcm.enableEventDrivenNotification();
+        bcm.setHistoryCapacity(10);
+        SimulatedAsyncRequest stream = SimulatedAsyncRequest.of(
+                ResponseGenerator.getTransformedSseUpdates(timeout, bcm, "", new EraserTransformer(), "B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("AB"));
+        await().atMost(Duration.ofMillis(500)).until(() -> stream.getSentEventData().size() == 2);
+        assertTrue(stream.getSentEventData().get(0).contains("B"));
+        assertTrue(stream.getSentEventData().get(1).contains("AB"));
+    }
+
+    /**
+     * Updates published before the stream is evaluated are pushed one by one, in version order, if retained.
+     */
+    @Test
+    public void pushRetainedIntermediateStates() throws Exception {
+        Queue<Runnable> withheldTasks = new ConcurrentLinkedQueue<>();
+        bcm.enableEventDrivenNotification(withheldTasks::add);
+        bcm.setHistoryCapacity(10);
+        SimulatedAsyncRequest stream = SimulatedAsyncRequest.of(ResponseGenerator.getSseUpdates(timeout, bcm));
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("D"));
+        withheldTasks.forEach(Runnable::run);
+
+        List<String> events = stream.getSentEventData();
+        assertEquals(3, events.size());
+        assertTrue(events.get(0).contains("B") && events.get(1).contains("C") && events.get(2).contains("D"));
+    }
+
+    /**
+     * Without history, updates published before the stream is evaluated are collapsed into the current state.
+     */
+    @Test
+    public void collapseUnretainedIntermediateStates() throws Exception {
+        Queue<Runnable> withheldTasks = new ConcurrentLinkedQueue<>();
+        bcm.enableEventDrivenNotification(withheldTasks::add);
+        SimulatedAsyncRequest stream = SimulatedAsyncRequest.of(ResponseGenerator.getSseUpdates(timeout, bcm));
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("C"));
+        bcm.updateBroadcastContent(new StringBroadcastContent("D"));
+        withheldTasks.forEach(Runnable::run);
+
+        List<String> events = stream.getSentEventData();
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).contains("D"));
+    }
+
+    /**
+     * Timed out streams are released.
+     */
+    @Test
+    public void timeoutReleasesStream() throws Exception {
+        bcm.enableEventDrivenNotification();
+        SimulatedAsyncRequest stream = SimulatedAsyncRequest.of(ResponseGenerator.getSseUpdates(timeout, bcm));
+        assertEquals(1, bcm.getPendingWaiterCount());
+
+        stream.timeout();
+        assertEquals(0, bcm.getPendingWaiterCount());
+    }
+
+    /**
+     * Termination closes the stream.
+     */
+    @Test
+    public void terminationClosesStream() throws Exception {
+        SimulatedAsyncRequest stream = SimulatedAsyncRequest.of(ResponseGenerator.getSseUpdates(timeout, bcm));
+        bcm.terminate();
+
+        await().atMost(Duration.ofMillis(500)).until(stream::hasResult);
+        await().atMost(Duration.ofMillis(500)).until(() -> bcm.getPendingWaiterCount() == 0);
+    }
+
+}
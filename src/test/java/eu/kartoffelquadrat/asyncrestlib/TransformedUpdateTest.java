@@ -5,6 +5,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TransformedUpdateTest {
 
@@ -30,4 +41,35 @@ public class TransformedUpdateTest {
     public void verifyHashRequired() {
         ResponseGenerator.getTransformedUpdate(timeout, bcm, null, null, null);
     }
+
+    /**
+     * Waiters sharing transformer and tag must share one transformation per update.
+     */
+    @Test
+    public void transformOncePerTag() {
+        AtomicInteger transformations = new AtomicInteger();
+        Transformer<StringBroadcastContent> prefixTransformer = (content, tag) -> {
+            transformations.incrementAndGet();
+            return new StringBroadcastContent(tag + ":" + content.getContent());
+        };
+        BroadcastContentManager<StringBroadcastContent> stringBcm =
+                new BroadcastContentManager<>(new StringBroadcastContent(defaultContentString));
+        stringBcm.enableEventDrivenNotification();
+
+        // subscribe many clients for two teams, each holding the current transformed state
+        List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+        for (int i = 0; i < 200; i++) {
+            String team = i % 2 == 0 ? "red" : "blue";
+            String hash = stringBcm.getCurrentSnapshot().view(prefixTransformer, team).getHash();
+            results.add(ResponseGenerator.getTransformedUpdate(5000, stringBcm, hash, prefixTransformer, team));
+        }
+
+        transformations.set(0);
+        stringBcm.updateBroadcastContent(new StringBroadcastContent("update"));
+        await().atMost(Duration.ofMillis(2000)).until(() -> results.stream().allMatch(DeferredResult::hasResult));
+
+        assertEquals(2, transformations.get());
+        assertTrue(((ResponseEntity<String>) results.get(0).getResult()).getBody().contains("red:update"));
+        assertTrue(((ResponseEntity<String>) results.get(1).getResult()).getBody().contains("blue:update"));
+    }
 }
@@ -0,0 +1,102 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests version based updates, as alternative to hash based updates.
+ */
+public class VersionedUpdateTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("A"));
+    }
+
+    /**
+     * A client with an outdated version receives the current content synchronously, including the current version.
+     */
+    @Test
+    public void synchronousUpdateOnOutdatedVersion() {
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getVersionBasedUpdate(timeout, bcm, 0);
+        ResponseEntity<String> responseEntity = (ResponseEntity<String>) result.getResult();
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        assertEquals(String.valueOf(bcm.getContentVersion()),
+                responseEntity.getHeaders().getFirst(ResponseGenerator.VERSION_HEADER));
+    }
+
+    /**
+     * A client with the current version is notified about the next version.
+     */
+    @Test
+    public void asynchronousUpdateOnCurrentVersion() {
+        long currentVersion = bcm.getContentVersion();
+        DeferredResult<ResponseEntity<String>> result =
+                ResponseGenerator.getVersionBasedUpdate(timeout, bcm, currentVersion);
+        assertFalse(result.hasResult());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+        ResponseEntity<String> responseEntity = (ResponseEntity<String>) result.getResult();
+        assertTrue(responseEntity.getBody().contains("B"));
+        assertEquals(String.valueOf(currentVersion + 1),
+                responseEntity.getHeaders().getFirst(ResponseGenerator.VERSION_HEADER));
+    }
+
+    /**
+     * A client version above the current one stems from an earlier manager of the resource and must be answered with
+     * the current content synchronously.
+     */
+    @Test
+    public void synchronousUpdateOnVersionAboveCurrent() {
+        DeferredResult<ResponseEntity<String>> result =
+                ResponseGenerator.getVersionBasedUpdate(timeout, bcm, bcm.getContentVersion() + 5);
+        ResponseEntity<String> responseEntity = (ResponseEntity<String>) result.getResult();
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        assertTrue(responseEntity.getBody().contains("A"));
+        assertEquals(String.valueOf(bcm.getContentVersion()),
+                responseEntity.getHeaders().getFirst(ResponseGenerator.VERSION_HEADER));
+    }
+
+    /**
+     * In version sync mode, identical content still counts as update. In hash sync mode it is rejected.
+     */
+    @Test
+    public void syncModeDecidesOnIdenticalUpdates() {
+        long initialVersion = bcm.getContentVersion();
+        bcm.updateBroadcastContent(new StringBroadcastContent("A"));
+        assertEquals(initialVersion, bcm.getContentVersion());
+
+        bcm.setSyncMode(SyncMode.VERSION);
+        bcm.updateBroadcastContent(new StringBroadcastContent("A"));
+        assertEquals(initialVersion + 1, bcm.getContentVersion());
+    }
+
+    /**
+     * Empty transformations of new versions must not be propagated.
+     */
+    @Test
+    public void skipEmptyTransformedVersions() {
+        bcm.enableEventDrivenNotification();
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getTransformedVersionBasedUpdate(timeout,
+                bcm, bcm.getContentVersion(), new EraserTransformer(), "keyword");
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("irrelevant"));
+        assertFalse(result.hasResult());
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("keyword"));
+        await().atMost(Duration.ofMillis(500)).until(result::hasResult);
+    }
+}
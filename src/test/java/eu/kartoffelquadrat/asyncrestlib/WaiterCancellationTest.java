@@ -0,0 +1,98 @@
+package eu.kartoffelquadrat.asyncrestlib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that pending requests are released as soon as they time out, fail or complete, rather than on the next
+ * content change. The timeout and error callbacks are usually invoked by the servlet container, which is not present in
+ * these tests. Therefore the tests signal timeout, error and completion on a simulated async request.
+ */
+public class WaiterCancellationTest {
+
+    private BroadcastContentManager<StringBroadcastContent> bcm;
+    private final int timeout = 5000;
+
+    @Before
+    public void prepareTest() {
+        bcm = new BroadcastContentManager<>(new StringBroadcastContent("27225ea03d26abf31a83b3cae6d78489"));
+    }
+
+    /**
+     * Repeated timeouts on a quiet resource must not pile up registered waiters.
+     */
+    @Test
+    public void registeredWaitersStayBoundedUnderRepeatedTimeouts() throws Exception {
+        bcm.enableEventDrivenNotification();
+
+        for (int round = 0; round < 20; round++) {
+            List<DeferredResult<ResponseEntity<String>>> results = new LinkedList<>();
+            for (int i = 0; i < 100; i++)
+                results.add(ResponseGenerator.getHashBasedUpdate(timeout, bcm, bcm.getContentHash()));
+            assertEquals(100, bcm.getPendingWaiterCount());
+
+            for (DeferredResult<ResponseEntity<String>> result : results) {
+                SimulatedAsyncRequest asyncRequest = SimulatedAsyncRequest.of(result);
+                asyncRequest.timeout();
+                asyncRequest.complete();
+                assertEquals(408, ((ResponseEntity<String>) result.getResult()).getStatusCodeValue());
+            }
+            assertEquals(0, bcm.getPendingWaiterCount());
+        }
+    }
+
+    /**
+     * A timeout must end the thread that waits on behalf of the request.
+     */
+    @Test
+    public void waitThreadEndsOnTimeout() throws Exception {
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        await().atMost(Duration.ofMillis(500)).until(() -> bcm.getPendingWaiterCount() == 1);
+
+        SimulatedAsyncRequest.of(result).timeout();
+        await().atMost(Duration.ofMillis(500)).until(() -> bcm.getPendingWaiterCount() == 0);
+    }
+
+    /**
+     * An error, e.g. client disconnect, must release the registered waiter.
+     */
+    @Test
+    public void errorReleasesRegisteredWaiter() throws Exception {
+        bcm.enableEventDrivenNotification();
+        DeferredResult<ResponseEntity<String>> result = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        assertEquals(1, bcm.getPendingWaiterCount());
+
+        SimulatedAsyncRequest.of(result).error(new RuntimeException("Client disconnected."));
+        assertEquals(0, bcm.getPendingWaiterCount());
+    }
+
+    /**
+     * Delivered updates must not leave any waiter behind.
+     */
+    @Test
+    public void deliveryReleasesWaiters() {
+        DeferredResult<ResponseEntity<String>> threadResult = ResponseGenerator.getAsyncUpdate(timeout, bcm);
+        BroadcastContentManager<StringBroadcastContent> eventDrivenBcm =
+                new BroadcastContentManager<>(new StringBroadcastContent("A"));
+        eventDrivenBcm.enableEventDrivenNotification();
+        DeferredResult<ResponseEntity<String>> registryResult = ResponseGenerator.getAsyncUpdate(timeout,
+                eventDrivenBcm);
+
+        bcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        eventDrivenBcm.updateBroadcastContent(new StringBroadcastContent("B"));
+        await().atMost(Duration.ofMillis(500)).until(() -> threadResult.hasResult() && registryResult.hasResult());
+        await().atMost(Duration.ofMillis(500)).until(() ->
+                bcm.getPendingWaiterCount() == 0 && eventDrivenBcm.getPendingWaiterCount() == 0);
+        assertTrue(threadResult.hasResult());
+    }
+}